@@ -0,0 +1,379 @@
+package cz.zcu.kiv.nlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import cz.zcu.kiv.nlp.ir.ExtractionPlan;
+import cz.zcu.kiv.nlp.vs.CrawlJob;
+import cz.zcu.kiv.nlp.vs.CrawlScheduler;
+import cz.zcu.kiv.nlp.vs.Crawler;
+
+/**
+ * Long running crawler accepting jobs over a local HTTP API.
+ * <p>
+ * The workers with their browsers and connection pools, the preprocessing pool and compiled
+ * extraction plans are kept between crawls, so a crawl doesn't pay the start up. Crawls run one
+ * after another on the shared {@link CrawlScheduler}.
+ * <ul>
+ * <li>{@code POST /crawls} - body in the format of {@link CrawlJob}, returns the crawl</li>
+ * <li>{@code GET /crawls} - all crawls with their progress</li>
+ * <li>{@code GET /crawls/<id>} - single crawl with its progress</li>
+ * <li>{@code POST /shutdown} - cancels the running and queued crawls and quits</li>
+ * </ul>
+ * The API is meant for local scripts only. Requests carrying an {@code Origin} header, i.e. sent by
+ * a web page, are refused, and crawls have to be posted as {@value #PROPERTIES_TYPE}, which a page
+ * can't send without a preflight. Storage, urls and stop words paths of the jobs have to lie
+ * within the configured root directory.
+ */
+public class CrawlDaemon {
+
+  private static final Logger log = Logger.getLogger(CrawlDaemon.class);
+
+  public static final int DEFAULT_PORT = 8765;
+  private static final String CRAWLS_PATH = "/crawls";
+  private static final String PROPERTIES_TYPE = "text/x-java-properties";
+  /**
+   * Time the pages in flight get to finish on shut down, before the crawl is interrupted.
+   */
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+  /**
+   * Number of compiled plans kept, the least recently used are dropped.
+   */
+  private static final int MAX_CACHED_PLANS = 32;
+
+  public enum State {
+    QUEUED, RUNNING, DONE, FAILED, CANCELLED
+  }
+
+  private final CrawlScheduler scheduler;
+  private final ForkJoinPool preprocessingPool;
+  private final Path root;
+  private final HttpServer server;
+  private final ExecutorService runner = Executors.newSingleThreadExecutor();
+
+  /**
+   * Compiled plans by the xpath map and the limits of the job.
+   */
+  private final Map<List<Object>, ExtractionPlan> extractionPlans = Collections.synchronizedMap(
+      new LinkedHashMap<List<Object>, ExtractionPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<List<Object>, ExtractionPlan> eldest) {
+          return size() > MAX_CACHED_PLANS;
+        }
+      });
+  private final Map<Integer, Crawl> crawls = Collections.synchronizedMap(new LinkedHashMap<Integer, Crawl>());
+  private final AtomicInteger lastId = new AtomicInteger();
+  private final AtomicBoolean shuttingDown = new AtomicBoolean();
+  private final CountDownLatch terminated = new CountDownLatch(1);
+
+  /**
+   * @param scheduler         scheduler with the workers, it is shut down with the daemon
+   * @param preprocessingPool pool for the preprocessing stages, it is shut down with the daemon
+   * @param port              local port of the API
+   * @param root              directory all files of the submitted jobs have to lie in
+   * @throws IOException if the port can't be bound
+   */
+  public CrawlDaemon(final CrawlScheduler scheduler, final ForkJoinPool preprocessingPool, final int port,
+      final Path root) throws IOException {
+    if (scheduler == null) {
+      throw new IllegalArgumentException("Scheduler may not be null");
+    }
+    if (preprocessingPool == null) {
+      throw new IllegalArgumentException("Preprocessing pool may not be null");
+    }
+    if (root == null) {
+      throw new IllegalArgumentException("Root directory may not be null");
+    }
+
+    this.scheduler = scheduler;
+    this.preprocessingPool = preprocessingPool;
+    this.root = root.toAbsolutePath().normalize();
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext(CRAWLS_PATH, this::handleCrawls);
+    server.createContext("/shutdown", this::handleShutdown);
+  }
+
+  public void start() {
+    server.start();
+    log.info("Crawl daemon listening on " + server.getAddress());
+  }
+
+  /**
+   * @return port the API is bound to, useful if the daemon was created with port 0
+   */
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Queues a crawl of the jobs.
+   *
+   * @param config jobs in the format of {@link CrawlJob}
+   * @return the queued crawl
+   * @throws IllegalArgumentException if the jobs are invalid or their files lie outside of the root
+   * @throws IllegalStateException    if the daemon is shutting down
+   */
+  public Crawl submit(final Properties config) {
+    if (shuttingDown.get()) {
+      throw new IllegalStateException("Daemon is shutting down");
+    }
+
+    final var jobs = CrawlJob.loadAll(config);
+    for (CrawlJob job : jobs) {
+      checkWithinRoot(job, job.getStoragePath());
+      // the urls file name is appended to the storage path as it is
+      checkWithinRoot(job, job.getStoragePath() + job.getUrlsStoragePath());
+      if (job.getStopWordsPath() != null) {
+        checkWithinRoot(job, job.getStopWordsPath());
+      }
+    }
+    final var crawl = new Crawl(lastId.incrementAndGet(), jobs);
+    crawls.put(crawl.id, crawl);
+    try {
+      runner.execute(() -> run(crawl));
+    } catch (RejectedExecutionException e) {
+      // shut down after the check above
+      crawls.remove(crawl.id);
+      throw new IllegalStateException("Daemon is shutting down");
+    }
+    log.info("Crawl " + crawl.id + " queued");
+    return crawl;
+  }
+
+  private void checkWithinRoot(final CrawlJob job, final String path) {
+    final Path resolved;
+    try {
+      resolved = Paths.get(path).toAbsolutePath().normalize();
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("Invalid path of job " + job.getName() + ": " + path);
+    }
+    if (!resolved.startsWith(root)) {
+      throw new IllegalArgumentException("Path of job " + job.getName() + " is outside of " + root + ": " + path);
+    }
+  }
+
+  private void run(final Crawl crawl) {
+    if (shuttingDown.get()) {
+      crawl.state = State.CANCELLED;
+      return;
+    }
+
+    crawl.state = State.RUNNING;
+    try {
+      crawl.crawlers = Main.createCrawlers(crawl.jobs, preprocessingPool,
+          job -> extractionPlans.computeIfAbsent(
+              List.<Object>of(job.getXpathMap(), job.getMaxMatches(), job.getMaxBodyChars()),
+              key -> job.compileExtractionPlan()));
+      scheduler.run(crawl.crawlers);
+      crawl.state = shuttingDown.get() ? State.CANCELLED : State.DONE;
+    } catch (IOException | RuntimeException e) {
+      log.error("Crawl " + crawl.id + " failed", e);
+      crawl.error = e.toString();
+      crawl.state = State.FAILED;
+    }
+  }
+
+  /**
+   * Stops accepting crawls, cancels the running and queued ones and quits the workers. Pages in
+   * flight get {@value #SHUTDOWN_TIMEOUT_SECONDS} seconds to finish, then the crawl is interrupted,
+   * so the browsers are always quit. May be called more than once.
+   */
+  public void shutdown() {
+    if (!shuttingDown.compareAndSet(false, true)) {
+      return;
+    }
+
+    log.info("Crawl daemon is shutting down");
+    runner.shutdown();
+    scheduler.cancel();
+    try {
+      if (!runner.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("Running crawl didn't stop in " + SHUTDOWN_TIMEOUT_SECONDS + " s, interrupting it");
+        runner.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      runner.shutdownNow();
+      Thread.currentThread().interrupt();
+    } finally {
+      server.stop(0);
+      scheduler.shutdown();
+      preprocessingPool.shutdown();
+      terminated.countDown();
+      log.info("Crawl daemon stopped");
+    }
+  }
+
+  /**
+   * Blocks until the daemon is shut down.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitTermination() throws InterruptedException {
+    terminated.await();
+  }
+
+  private void handleCrawls(final HttpExchange exchange) throws IOException {
+    if (isFromWebPage(exchange)) {
+      return;
+    }
+    final var path = exchange.getRequestURI().getPath();
+    final var method = exchange.getRequestMethod();
+    try {
+      if (path.equals(CRAWLS_PATH) && method.equals("POST")) {
+        if (!isPropertiesType(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+          respond(exchange, 415, "{\"error\":\"Crawl has to be sent as " + PROPERTIES_TYPE + "\"}");
+          return;
+        }
+        final var config = new Properties();
+        try (InputStream body = exchange.getRequestBody()) {
+          config.load(new InputStreamReader(body, StandardCharsets.UTF_8));
+        }
+        respond(exchange, 201, submit(config).toJson());
+      } else if (path.equals(CRAWLS_PATH) && method.equals("GET")) {
+        final List<String> list = new ArrayList<>();
+        synchronized (crawls) {
+          for (Crawl crawl : crawls.values()) {
+            list.add(crawl.toJson());
+          }
+        }
+        respond(exchange, 200, "[" + String.join(",", list) + "]");
+      } else if (path.startsWith(CRAWLS_PATH + "/") && method.equals("GET")) {
+        final var crawl = crawls.get(parseId(path.substring(CRAWLS_PATH.length() + 1)));
+        if (crawl == null) {
+          respond(exchange, 404, "{\"error\":\"No such crawl\"}");
+        } else {
+          respond(exchange, 200, crawl.toJson());
+        }
+      } else {
+        respond(exchange, 404, "{\"error\":\"Unknown request\"}");
+      }
+    } catch (IllegalArgumentException e) {
+      respond(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+    } catch (IllegalStateException e) {
+      respond(exchange, 503, "{\"error\":" + quote(e.getMessage()) + "}");
+    }
+  }
+
+  private void handleShutdown(final HttpExchange exchange) throws IOException {
+    if (isFromWebPage(exchange)) {
+      return;
+    }
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 404, "{\"error\":\"Unknown request\"}");
+      return;
+    }
+    respond(exchange, 202, "{\"state\":\"SHUTTING_DOWN\"}");
+    // the server waits for this exchange when it is stopped
+    new Thread(this::shutdown, "crawl-daemon-shutdown").start();
+  }
+
+  /**
+   * Refuses requests sent by web pages, browsers add the {@code Origin} header to them.
+   *
+   * @return true if the request was refused
+   */
+  private static boolean isFromWebPage(final HttpExchange exchange) throws IOException {
+    if (exchange.getRequestHeaders().getFirst("Origin") == null) {
+      return false;
+    }
+    respond(exchange, 403, "{\"error\":\"Requests from web pages are not allowed\"}");
+    return true;
+  }
+
+  private static boolean isPropertiesType(final String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    final int parameters = contentType.indexOf(';');
+    final var mediaType = parameters >= 0 ? contentType.substring(0, parameters) : contentType;
+    return mediaType.trim().equalsIgnoreCase(PROPERTIES_TYPE);
+  }
+
+  private static int parseId(final String id) {
+    try {
+      return Integer.parseInt(id);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static void respond(final HttpExchange exchange, final int status, final String json) throws IOException {
+    final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream stream = exchange.getResponseBody()) {
+      stream.write(body);
+    }
+  }
+
+  private static String quote(final String text) {
+    if (text == null) {
+      return "null";
+    }
+    return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+  }
+
+  /**
+   * Single submitted crawl of one or more jobs.
+   */
+  public static final class Crawl {
+    private final int id;
+    private final List<CrawlJob> jobs;
+    private volatile State state = State.QUEUED;
+    private volatile List<Crawler> crawlers = Collections.emptyList();
+    private volatile String error;
+
+    private Crawl(final int id, final List<CrawlJob> jobs) {
+      this.id = id;
+      this.jobs = jobs;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    private String toJson() {
+      final List<String> progress = new ArrayList<>();
+      for (Crawler crawler : crawlers) {
+        progress.add("{\"name\":" + quote(crawler.getJob().getName())
+            + ",\"processed\":" + crawler.getProcessedCount()
+            + ",\"total\":" + crawler.getTotalCount()
+            + ",\"finished\":" + crawler.isFinished() + "}");
+      }
+      return "{\"id\":" + id + ",\"state\":\"" + state + "\""
+          + (error != null ? ",\"error\":" + quote(error) : "")
+          + ",\"jobs\":[" + String.join(",", progress) + "]}";
+    }
+  }
+}
@@ -1,23 +1,105 @@
 package cz.zcu.kiv.nlp;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
+import cz.zcu.kiv.nlp.ir.ExtractionPlan;
+import cz.zcu.kiv.nlp.ir.FailureTracker;
 import cz.zcu.kiv.nlp.ir.HTMLDownloaderSelenium;
+import cz.zcu.kiv.nlp.preprocess.TextPreprocessor;
+import cz.zcu.kiv.nlp.preprocess.Tokenizer;
+import cz.zcu.kiv.nlp.vs.CrawlJob;
+import cz.zcu.kiv.nlp.vs.CrawlScheduler;
 import cz.zcu.kiv.nlp.vs.Crawler;
+import cz.zcu.kiv.nlp.vs.PostProcessor;
 
 public class Main {
 
-  private static final String STORAGE = "./storage/hokej-cz";
-  private static final int POLITENESS_INTERVAL_MILLIS = 1200;
+  private static final Logger log = Logger.getLogger(Main.class);
+
+  private static final String DEFAULT_CONFIG = "/crawl.properties";
+  private static final String DEFAULT_STOP_WORDS = "/stopwords-cs.txt";
+  private static final String DAEMON_FLAG = "--daemon";
 
+  /**
+   * Usage: {@code [--daemon] [config]}. Without the flag the jobs of the config are crawled once,
+   * with it a {@link CrawlDaemon} is started and accepts jobs until it is shut down; only the
+   * workers, breaker and daemon settings of the config are used then.
+   */
   public static void main(final String[] args) {
     initialize();
-    final var storage = new Storage(STORAGE);
+    final boolean daemon = args.length > 0 && DAEMON_FLAG.equals(args[0]);
+    final int configIndex = daemon ? 1 : 0;
+    final Properties config;
+    try {
+      config = loadConfig(args.length > configIndex ? args[configIndex] : null);
+    } catch (IOException e) {
+      log.error("Crawl configuration can't be read", e);
+      return;
+    }
+
+    if (daemon) {
+      runDaemon(config);
+    } else {
+      crawlOnce(config);
+    }
+  }
+
+  private static void crawlOnce(final Properties config) {
+    final var jobs = CrawlJob.loadAll(config);
+    final var workers = Integer.parseInt(config.getProperty("workers", String.valueOf(jobs.size())).trim());
+    // shared by all jobs, uses the CPU while the workers wait for politeness
+    final var preprocessingPool = new ForkJoinPool();
+    final var scheduler = new CrawlScheduler(HTMLDownloaderSelenium::new, workers, createFailureTracker(config));
+    try {
+      scheduler.run(createCrawlers(jobs, preprocessingPool, CrawlJob::compileExtractionPlan));
+    } catch (IOException e) {
+      log.error("Stop words can't be read", e);
+    } finally {
+      scheduler.shutdown();
+      preprocessingPool.shutdown();
+    }
+  }
+
+  private static void runDaemon(final Properties config) {
+    final var workers = Integer.parseInt(config.getProperty("workers", "1").trim());
+    final var port = Integer.parseInt(config.getProperty("daemon.port",
+        String.valueOf(CrawlDaemon.DEFAULT_PORT)).trim());
+    final var root = Paths.get(config.getProperty("daemon.root", ".").trim());
+    final var preprocessingPool = new ForkJoinPool();
+    final var scheduler = new CrawlScheduler(HTMLDownloaderSelenium::new, workers, createFailureTracker(config));
 
-    var crawler = createCrawler(storage);
-    crawler.crawl();
+    final CrawlDaemon daemon;
+    try {
+      daemon = new CrawlDaemon(scheduler, preprocessingPool, port, root);
+    } catch (IOException e) {
+      log.error("Daemon can't listen on port " + port, e);
+      scheduler.shutdown();
+      preprocessingPool.shutdown();
+      return;
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(daemon::shutdown));
+    daemon.start();
+    try {
+      daemon.awaitTermination();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   private static void initialize() {
@@ -25,8 +107,47 @@ public class Main {
     Logger.getRootLogger().setLevel(Level.INFO);
   }
 
-  private static Crawler createCrawler(final Storage storage) {
-    final var downloader = new HTMLDownloaderSelenium();
-    return new Crawler(downloader, POLITENESS_INTERVAL_MILLIS, storage);
+  private static Properties loadConfig(final String path) throws IOException {
+    final var properties = new Properties();
+    try (InputStream stream = path != null ? new FileInputStream(path) : Main.class.getResourceAsStream(DEFAULT_CONFIG)) {
+      if (stream == null) {
+        throw new IOException("Default configuration " + DEFAULT_CONFIG + " is missing");
+      }
+      properties.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+    return properties;
+  }
+
+  private static FailureTracker createFailureTracker(final Properties config) {
+    return new FailureTracker(
+        Integer.parseInt(config.getProperty("breaker.window",
+            String.valueOf(FailureTracker.DEFAULT_WINDOW_SIZE)).trim()),
+        Double.parseDouble(config.getProperty("breaker.failureRate",
+            String.valueOf(FailureTracker.DEFAULT_FAILURE_RATE_THRESHOLD)).trim()),
+        Long.parseLong(config.getProperty("breaker.openMillis",
+            String.valueOf(FailureTracker.DEFAULT_OPEN_MILLIS)).trim()),
+        Integer.parseInt(config.getProperty("breaker.maxFailedProbes",
+            String.valueOf(FailureTracker.DEFAULT_MAX_FAILED_PROBES)).trim()));
+  }
+
+  static List<Crawler> createCrawlers(final List<CrawlJob> jobs, final ForkJoinPool preprocessingPool,
+      final Function<CrawlJob, ExtractionPlan> extractionPlans) throws IOException {
+    final List<Crawler> crawlers = new ArrayList<>();
+    for (CrawlJob job : jobs) {
+      final List<PostProcessor> postProcessors = new ArrayList<>();
+      if (!job.getPreprocessKeys().isEmpty()) {
+        final var tokenizer = new Tokenizer(loadStopWords(job.getStopWordsPath()));
+        postProcessors.add(new TextPreprocessor(preprocessingPool, tokenizer, job.getPreprocessKeys()));
+      }
+      crawlers.add(new Crawler(job, new Storage(job.getStoragePath()), extractionPlans.apply(job), postProcessors));
+    }
+    return crawlers;
+  }
+
+  private static Set<String> loadStopWords(final String path) throws IOException {
+    final InputStream stream = path != null
+        ? new FileInputStream(path)
+        : Main.class.getResourceAsStream(DEFAULT_STOP_WORDS);
+    return Tokenizer.loadStopWords(stream);
   }
 }
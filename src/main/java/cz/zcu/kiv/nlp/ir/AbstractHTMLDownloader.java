@@ -2,8 +2,9 @@ package cz.zcu.kiv.nlp.ir;
 
 import org.apache.log4j.Logger;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class is a demonstration of how crawler can be used to download a website
@@ -12,22 +13,53 @@ import java.util.Set;
 public abstract class AbstractHTMLDownloader implements HTMLDownloaderInterface {
 
     static final Logger log = Logger.getLogger(AbstractHTMLDownloader.class);
-    Set<String> failedLinks = new HashSet<String>();
+    private static final String LINKS_KEY = "links";
+
+    final StreamingExtractor extractor = new StreamingExtractor();
+    final FailureTracker failureTracker;
+
+    /**
+     * Constructor
+     *
+     * @param failureTracker tracker of download outcomes
+     */
+    protected AbstractHTMLDownloader(FailureTracker failureTracker) {
+        if (failureTracker == null) {
+            throw new IllegalArgumentException("Failure tracker may not be null");
+        }
+        this.failureTracker = failureTracker;
+    }
 
     /**
-     * Get failed links.
+     * Get tracker of download outcomes, may be shared with other downloaders.
      *
-     * @return failed links
+     * @return failure tracker
      */
-    public Set<String> getFailedLinks() {
-        return failedLinks;
+    public FailureTracker getFailureTracker() {
+        return failureTracker;
     }
 
     /**
-     * Empty the empty links set
+     * Downloads given url page and extracts xpath expressions.
+     *
+     * @param url      page url
+     * @param xpathMap pairs of description and xpath expression
+     * @return pairs of descriptions and extracted values
+     */
+    public Map<String, List<String>> processUrl(String url, Map<String, String> xpathMap) {
+        return processUrl(url, ExtractionPlan.compile(xpathMap));
+    }
+
+    /**
+     * Downloads given url page and extracts xpath expression.
+     *
+     * @param url   page url
+     * @param xPath xpath expression
+     * @return list of extracted values
      */
-    public void emptyFailedLinks() {
-        failedLinks = new HashSet<String>();
+    public List<String> getLinks(String url, String xPath) {
+        List<String> links = processUrl(url, ExtractionPlan.compile(LINKS_KEY, xPath)).get(LINKS_KEY);
+        return links != null ? links : new ArrayList<String>();
     }
 }
 
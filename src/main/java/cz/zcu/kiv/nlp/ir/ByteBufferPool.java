@@ -0,0 +1,57 @@
+package cz.zcu.kiv.nlp.ir;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread safe pool of equally sized byte buffers, so that a buffer isn't allocated for every page.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * @param bufferSize size of a buffer in bytes
+     * @param maxPooled  number of released buffers kept for reuse
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size has to be a positive integer");
+        }
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Number of pooled buffers may not be negative");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool or allocates a new one. The buffer is backed by an array,
+     * so that streams can read into it without another copy.
+     *
+     * @return buffer in write mode
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns the buffer to the pool. The buffer may not be used afterwards.
+     *
+     * @param buffer buffer taken by {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) {
+            return;
+        }
+        buffer.clear();
+        // the size check is racy, the pool may slightly exceed the limit
+        if (buffers.size() < maxPooled) {
+            buffers.offer(buffer);
+        }
+    }
+}
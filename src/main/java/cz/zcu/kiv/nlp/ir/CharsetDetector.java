@@ -0,0 +1,95 @@
+package cz.zcu.kiv.nlp.ir;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Detects charset of a page from its first bytes: byte order mark, then the
+ * {@code <meta charset>} or {@code <meta http-equiv="Content-Type">} tag.
+ */
+public class CharsetDetector {
+
+    /**
+     * Number of bytes searched for the meta tag, as in the HTML prescan.
+     */
+    public static final int PRESCAN_BYTES = 1024;
+
+    private static final Pattern META_CHARSET =
+            Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?\\s*([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Detects charset from the remaining bytes of the buffer, without consuming them.
+     *
+     * @param head first bytes of the page
+     * @return detected charset, null if the page doesn't declare any
+     */
+    public static Charset detect(ByteBuffer head) {
+        Charset byteOrderMark = detectByteOrderMark(head);
+        if (byteOrderMark != null) {
+            return byteOrderMark;
+        }
+
+        int start = head.position();
+        int length = Math.min(head.remaining(), PRESCAN_BYTES);
+        // markup is ASCII in all charsets the meta tag may declare
+        char[] ascii = new char[length];
+        for (int i = 0; i < length; i++) {
+            ascii[i] = (char) (head.get(start + i) & 0xFF);
+        }
+        Matcher matcher = META_CHARSET.matcher(CharBuffer.wrap(ascii));
+        return matcher.find() ? forName(matcher.group(1)) : null;
+    }
+
+    /**
+     * Detects charset from the byte order mark at the start of the buffer, without consuming it.
+     * The mark takes precedence over the charset sent by the server.
+     *
+     * @param head first bytes of the page
+     * @return charset of the mark, null if there is none
+     */
+    public static Charset detectByteOrderMark(ByteBuffer head) {
+        int start = head.position();
+        int length = head.remaining();
+        if (length >= 3 && (head.get(start) & 0xFF) == 0xEF && (head.get(start + 1) & 0xFF) == 0xBB
+                && (head.get(start + 2) & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (head.get(start) & 0xFF) == 0xFE && (head.get(start + 1) & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (length >= 2 && (head.get(start) & 0xFF) == 0xFF && (head.get(start + 1) & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    /**
+     * Looks up charset by name.
+     *
+     * @param name charset name
+     * @return charset, null if it is unknown
+     */
+    public static Charset forName(String name) {
+        try {
+            return Charset.forName(name.trim());
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Length of the byte order mark of the charset.
+     *
+     * @param byteOrderMark charset returned by {@link #detectByteOrderMark(ByteBuffer)}
+     * @return number of bytes to skip
+     */
+    static int byteOrderMarkLength(Charset byteOrderMark) {
+        return StandardCharsets.UTF_8.equals(byteOrderMark) ? 3 : 2;
+    }
+}
@@ -0,0 +1,143 @@
+package cz.zcu.kiv.nlp.ir;
+
+/**
+ * Circuit breaker of a single host.
+ * <p>
+ * The breaker keeps outcomes of the last requests. Once enough of them failed, it opens and no
+ * requests should be sent to the host. After the open interval a single probe is allowed
+ * (half open); if it succeeds the breaker closes again, otherwise it is opened for another interval.
+ * After several failed probes in a row the host is considered down and its queued requests
+ * should be skipped instead of waiting. The host is still probed every open interval, a successful
+ * probe closes the breaker and brings the host back.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int maxFailedProbes;
+
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long retryAtNanos;
+    private int failedProbes;
+
+    /**
+     * @param windowSize           number of last requests the failure rate is computed from
+     * @param failureRateThreshold failure rate which opens the breaker, between 0 and 1
+     * @param openMillis           time until the next probe
+     * @param maxFailedProbes      failed probes after which the host is considered down
+     */
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openMillis, int maxFailedProbes) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size has to be a positive integer");
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("Failure rate threshold has to be in (0, 1]");
+        }
+        if (openMillis <= 0) {
+            throw new IllegalArgumentException("Open interval has to be a positive integer");
+        }
+        if (maxFailedProbes <= 0) {
+            throw new IllegalArgumentException("Max failed probes has to be a positive integer");
+        }
+
+        this.window = new boolean[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openMillis * 1000000L;
+        this.maxFailedProbes = maxFailedProbes;
+    }
+
+    /**
+     * Tells whether a request may be sent now. A request allowed after the open interval is the probe.
+     *
+     * @param now {@link System#nanoTime()}
+     * @return true if the request may be sent
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (state == State.OPEN) {
+            if (now - retryAtNanos < 0) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    /**
+     * Time until which no requests are allowed.
+     *
+     * @param now {@link System#nanoTime()}
+     * @return time of the next probe if the breaker is open, now otherwise
+     */
+    public synchronized long getBlockedUntil(long now) {
+        return state == State.OPEN ? retryAtNanos : now;
+    }
+
+    /**
+     * Tells whether requests to the host should be skipped instead of waiting for the next probe.
+     *
+     * @return true if the breaker is open after too many failed probes
+     */
+    public synchronized boolean isGivenUp() {
+        return state == State.OPEN && failedProbes >= maxFailedProbes;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            failedProbes = 0;
+            windowPosition = 0;
+            windowCount = 0;
+            windowFailures = 0;
+        }
+        addOutcome(false);
+    }
+
+    public synchronized void recordFailure(long now) {
+        if (state == State.OPEN) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            failedProbes++;
+            open(now);
+            return;
+        }
+
+        addOutcome(true);
+        if (windowCount == window.length && windowFailures >= failureRateThreshold * window.length) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        retryAtNanos = now + openNanos;
+    }
+
+    private void addOutcome(boolean failed) {
+        if (windowCount == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPosition] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+}
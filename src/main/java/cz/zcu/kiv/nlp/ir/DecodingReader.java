@@ -0,0 +1,177 @@
+package cz.zcu.kiv.nlp.ir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader decoding a response stream through a single pooled byte buffer.
+ * <p>
+ * The bytes are read straight into the buffer and decoded into the caller's array, so the page
+ * is never held as a whole, neither as bytes nor as a string. If the server doesn't declare the
+ * charset, it is detected from the first bytes of the page. The buffer is returned to the pool on
+ * {@link #close()}.
+ */
+public class DecodingReader extends Reader {
+
+    private final InputStream in;
+    private final ByteBufferPool pool;
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    /**
+     * Target of reads shorter than two characters, a surrogate pair can't be decoded into less.
+     */
+    private final CharBuffer pair = CharBuffer.allocate(2);
+    private ByteBuffer bytes;
+    private boolean endOfInput;
+    private boolean flushed;
+
+    private DecodingReader(InputStream in, ByteBufferPool pool, ByteBuffer bytes, Charset charset) {
+        this.in = in;
+        this.pool = pool;
+        this.bytes = bytes;
+        this.charset = charset;
+        this.pair.limit(0);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Opens the reader, reading the first bytes of the stream to detect the charset. A byte order
+     * mark wins over the declared charset, the meta tag of the page is used only if there is neither.
+     *
+     * @param in       response stream, it is closed with the reader
+     * @param declared charset from the response headers, null if there is none
+     * @param pool     pool of the buffers
+     * @return reader of the page
+     * @throws IOException if reading fails
+     */
+    public static DecodingReader open(InputStream in, Charset declared, ByteBufferPool pool) throws IOException {
+        ByteBuffer bytes = pool.acquire();
+        try {
+            boolean endOfInput = false;
+            while (bytes.position() < CharsetDetector.PRESCAN_BYTES && bytes.hasRemaining() && !endOfInput) {
+                endOfInput = fill(in, bytes);
+            }
+            bytes.flip();
+
+            // a byte order mark is more reliable than the header, and is never part of the text
+            Charset charset = CharsetDetector.detectByteOrderMark(bytes);
+            if (charset != null) {
+                bytes.position(bytes.position() + CharsetDetector.byteOrderMarkLength(charset));
+            } else if (declared != null) {
+                charset = declared;
+            } else {
+                charset = CharsetDetector.detect(bytes);
+            }
+            if (charset == null) {
+                charset = StandardCharsets.UTF_8;
+            }
+
+            DecodingReader reader = new DecodingReader(in, pool, bytes, charset);
+            reader.endOfInput = endOfInput;
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            pool.release(bytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads from the stream into the free space of the buffer.
+     *
+     * @return true if the stream has ended
+     */
+    private static boolean fill(InputStream in, ByteBuffer bytes) throws IOException {
+        int count = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        if (count == -1) {
+            return true;
+        }
+        bytes.position(bytes.position() + count);
+        return false;
+    }
+
+    /**
+     * Get charset the page is decoded with.
+     *
+     * @return charset
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (bytes == null) {
+            throw new IOException("Reader is closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        // the low surrogate left over from a single character read
+        if (pair.hasRemaining()) {
+            cbuf[off] = pair.get();
+            return 1;
+        }
+        if (len >= pair.capacity()) {
+            return decode(CharBuffer.wrap(cbuf, off, len));
+        }
+
+        pair.clear();
+        int count = decode(pair);
+        pair.flip();
+        if (count == -1) {
+            return -1;
+        }
+        cbuf[off] = pair.get();
+        return 1;
+    }
+
+    /**
+     * Decodes at least one character into the buffer, which has room for two at least.
+     *
+     * @return number of decoded characters, -1 at the end of the stream
+     */
+    private int decode(CharBuffer out) throws IOException {
+        int start = out.position();
+        while (true) {
+            decoder.decode(bytes, out, endOfInput);
+            if (out.position() > start) {
+                return out.position() - start;
+            }
+            if (endOfInput) {
+                if (!flushed) {
+                    decoder.flush(out);
+                    flushed = true;
+                    if (out.position() > start) {
+                        return out.position() - start;
+                    }
+                }
+                return -1;
+            }
+
+            // the rest of the buffer is an incomplete character, keep it and read more
+            bytes.compact();
+            endOfInput = fill(in, bytes);
+            bytes.flip();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (bytes == null) {
+            return;
+        }
+        pool.release(bytes);
+        bytes = null;
+        in.close();
+    }
+}
@@ -0,0 +1,268 @@
+package cz.zcu.kiv.nlp.ir;
+
+import us.codecraft.xsoup.XPathEvaluator;
+import us.codecraft.xsoup.Xsoup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled set of xpath expressions used by {@link StreamingExtractor}.
+ * <p>
+ * Every expression is compiled once. When an expression starts with a simple step such as
+ * {@code //div[contains(@class, 'article')]}, the step is used as a filter while streaming the page
+ * so that only the matching subtrees are ever parsed. Expressions sharing the same leading step
+ * share one captured subtree. If any expression can't be reduced to such a step, the whole page
+ * is parsed as before.
+ */
+public class ExtractionPlan {
+
+    /**
+     * Default cap of the page body, in characters.
+     */
+    public static final int DEFAULT_MAX_BODY_CHARS = 4 * 1024 * 1024;
+
+    /**
+     * Don't stop the extraction until the end of the page.
+     */
+    public static final int UNLIMITED_MATCHES = Integer.MAX_VALUE;
+
+    private static final Pattern LEADING_STEP =
+            Pattern.compile("^//([a-zA-Z][a-zA-Z0-9]*)(?:\\[([^\\[\\]]*)\\])?(?=/|$)");
+    /**
+     * Quoted literal without the quote inside, so that compound predicates such as
+     * {@code @a='x' and @b='y'} don't match as a single one.
+     */
+    private static final String LITERAL = "(?:'([^']*)'|\"([^\"]*)\")";
+    private static final Pattern EQUALS_PREDICATE =
+            Pattern.compile("^\\s*@([\\w-]+)\\s*=\\s*" + LITERAL + "\\s*$");
+    private static final Pattern FUNCTION_PREDICATE =
+            Pattern.compile("^\\s*(contains|starts-with)\\(\\s*@([\\w-]+)\\s*,\\s*" + LITERAL + "\\s*\\)\\s*$");
+
+    /**
+     * Elements which can't be parsed as a standalone body fragment or whose content isn't markup.
+     */
+    private static final Set<String> UNSUPPORTED_TAGS = new HashSet<String>(Arrays.asList(
+            "html", "head", "body", "thead", "tbody", "tfoot", "tr", "td", "th", "caption", "colgroup", "col",
+            "option", "optgroup", "frameset", "frame", "template", "script", "style", "textarea", "title"));
+
+    private final Map<String, XPathEvaluator> evaluators;
+    private final List<Group> groups;
+    private final boolean streamable;
+    private final int maxBodyChars;
+
+    private ExtractionPlan(Map<String, XPathEvaluator> evaluators, List<Group> groups, boolean streamable,
+                           int maxBodyChars) {
+        this.evaluators = evaluators;
+        this.groups = groups;
+        this.streamable = streamable;
+        this.maxBodyChars = maxBodyChars;
+    }
+
+    /**
+     * Compiles xpath expressions without a limit on the number of matches.
+     *
+     * @param xpathMap pairs of description and xpath expression
+     * @return compiled plan
+     */
+    public static ExtractionPlan compile(Map<String, String> xpathMap) {
+        return compile(xpathMap, UNLIMITED_MATCHES, DEFAULT_MAX_BODY_CHARS);
+    }
+
+    /**
+     * Compiles xpath expressions.
+     *
+     * @param xpathMap     pairs of description and xpath expression
+     * @param maxMatches   number of outermost matching subtrees after which the extraction of an expression
+     *                     is finished; expressions matching an {@code @id} always stop after the first one
+     * @param maxBodyChars number of characters of the page body to read at most
+     * @return compiled plan
+     */
+    public static ExtractionPlan compile(Map<String, String> xpathMap, int maxMatches, int maxBodyChars) {
+        if (xpathMap == null || xpathMap.isEmpty()) {
+            throw new IllegalArgumentException("Xpath map may not be empty");
+        }
+        if (maxMatches <= 0) {
+            throw new IllegalArgumentException("Max matches has to be a positive integer");
+        }
+        if (maxBodyChars <= 0) {
+            throw new IllegalArgumentException("Max body size has to be a positive integer");
+        }
+
+        Map<String, XPathEvaluator> evaluators = new LinkedHashMap<String, XPathEvaluator>();
+        Map<String, Group> groups = new LinkedHashMap<String, Group>();
+        boolean streamable = true;
+        for (Map.Entry<String, String> entry : xpathMap.entrySet()) {
+            evaluators.put(entry.getKey(), Xsoup.compile(entry.getValue()));
+
+            Group group = parseLeadingStep(entry.getValue(), maxMatches, groups.size());
+            if (group == null) {
+                streamable = false;
+                continue;
+            }
+            Group existing = groups.get(group.signature());
+            if (existing == null) {
+                groups.put(group.signature(), group);
+                existing = group;
+            }
+            existing.keys.add(entry.getKey());
+        }
+
+        return new ExtractionPlan(Collections.unmodifiableMap(evaluators),
+                Collections.unmodifiableList(new ArrayList<Group>(groups.values())), streamable, maxBodyChars);
+    }
+
+    /**
+     * Compiles a single xpath expression, e.g. for link extraction.
+     *
+     * @param key   description of the expression
+     * @param xPath xpath expression
+     * @return compiled plan
+     */
+    public static ExtractionPlan compile(String key, String xPath) {
+        return compile(Collections.singletonMap(key, xPath));
+    }
+
+    private static Group parseLeadingStep(String xPath, int maxMatches, int index) {
+        Matcher step = LEADING_STEP.matcher(xPath.trim());
+        if (!step.find()) {
+            return null;
+        }
+        String tagName = step.group(1).toLowerCase();
+        if (UNSUPPORTED_TAGS.contains(tagName)) {
+            return null;
+        }
+
+        String predicate = step.group(2);
+        if (predicate == null) {
+            return new Group(index, tagName, null, null, null, maxMatches);
+        }
+
+        Matcher equals = EQUALS_PREDICATE.matcher(predicate);
+        if (equals.matches()) {
+            String attribute = equals.group(1).toLowerCase();
+            int limit = "id".equals(attribute) ? 1 : maxMatches;
+            return new Group(index, tagName, attribute, Operator.EQUALS, literal(equals, 2), limit);
+        }
+
+        Matcher function = FUNCTION_PREDICATE.matcher(predicate);
+        if (function.matches()) {
+            Operator operator = "contains".equals(function.group(1)) ? Operator.CONTAINS : Operator.STARTS_WITH;
+            return new Group(index, tagName, function.group(2).toLowerCase(), operator, literal(function, 3),
+                    maxMatches);
+        }
+        return null;
+    }
+
+    /**
+     * Value of the {@link #LITERAL} starting at the given group, whichever quotes it uses.
+     */
+    private static String literal(Matcher matcher, int group) {
+        return matcher.group(group) != null ? matcher.group(group) : matcher.group(group + 1);
+    }
+
+    /**
+     * Get descriptions of the compiled expressions.
+     *
+     * @return descriptions
+     */
+    public Set<String> getKeys() {
+        return evaluators.keySet();
+    }
+
+    /**
+     * Get compiled expression.
+     *
+     * @param key description of the expression
+     * @return compiled expression
+     */
+    public XPathEvaluator getEvaluator(String key) {
+        return evaluators.get(key);
+    }
+
+    /**
+     * Tells whether the page can be streamed or it has to be parsed whole.
+     *
+     * @return true if only the matching subtrees have to be parsed
+     */
+    public boolean isStreamable() {
+        return streamable;
+    }
+
+    /**
+     * Get maximal number of characters of the page body to read.
+     *
+     * @return body cap
+     */
+    public int getMaxBodyChars() {
+        return maxBodyChars;
+    }
+
+    List<Group> getGroups() {
+        return groups;
+    }
+
+    enum Operator {
+        EQUALS, CONTAINS, STARTS_WITH
+    }
+
+    /**
+     * Leading step shared by one or more expressions.
+     */
+    static final class Group {
+        final int index;
+        final String tagName;
+        final String attribute;
+        final Operator operator;
+        final String value;
+        final int maxMatches;
+        final List<String> keys = new ArrayList<String>();
+
+        Group(int index, String tagName, String attribute, Operator operator, String value, int maxMatches) {
+            this.index = index;
+            this.tagName = tagName;
+            this.attribute = attribute;
+            this.operator = operator;
+            this.value = value != null ? value.trim().toLowerCase(Locale.ROOT) : null;
+            this.maxMatches = maxMatches;
+        }
+
+        String signature() {
+            return tagName + "|" + attribute + "|" + operator + "|" + value;
+        }
+
+        /**
+         * Tests the attribute predicate of the step the way Jsoup evaluators used by Xsoup do: the value
+         * of the predicate is trimmed, both values are compared ignoring case and the attribute value is
+         * trimmed for equality.
+         *
+         * @param attributeValue value of the attribute in the tag, null if the tag doesn't have it
+         * @return true if the tag matches the step
+         */
+        boolean accepts(String attributeValue) {
+            if (attribute == null) {
+                return true;
+            }
+            if (attributeValue == null) {
+                return false;
+            }
+            switch (operator) {
+                case EQUALS:
+                    return attributeValue.trim().equalsIgnoreCase(value);
+                case CONTAINS:
+                    return attributeValue.toLowerCase(Locale.ROOT).contains(value);
+                default:
+                    return attributeValue.toLowerCase(Locale.ROOT).startsWith(value);
+            }
+        }
+    }
+}
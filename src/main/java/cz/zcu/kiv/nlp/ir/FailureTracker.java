@@ -0,0 +1,226 @@
+package cz.zcu.kiv.nlp.ir;
+
+import cz.zcu.kiv.nlp.utils.Links;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe record of download outcomes, shared by all downloaders of a crawl.
+ * <p>
+ * Every failure is kept with its cause, status code and latency until it is drained. Outcomes are
+ * also counted per host. Only failures telling that the host itself is down or overloaded - transport
+ * errors, timeouts, server errors and throttling - are fed into the {@link CircuitBreaker} of the host;
+ * client errors such as 404 are failures of a single page.
+ */
+public class FailureTracker {
+
+    public static final int DEFAULT_WINDOW_SIZE = 10;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final long DEFAULT_OPEN_MILLIS = 60000;
+    public static final int DEFAULT_MAX_FAILED_PROBES = 3;
+
+    /**
+     * Cause of requests which weren't sent because the host is down.
+     */
+    public static final String CIRCUIT_OPEN = "circuit open, host is down";
+
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final int maxFailedProbes;
+
+    private final Queue<FetchFailure> failures = new ConcurrentLinkedQueue<FetchFailure>();
+    private final Map<String, HostStats> hosts = new ConcurrentHashMap<String, HostStats>();
+
+    public FailureTracker() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_OPEN_MILLIS, DEFAULT_MAX_FAILED_PROBES);
+    }
+
+    /**
+     * @param windowSize           number of last requests the failure rate of a host is computed from
+     * @param failureRateThreshold failure rate which stops requests to a host, between 0 and 1
+     * @param openMillis           time until a stopped host is probed again
+     * @param maxFailedProbes      failed probes after which the host is considered down
+     */
+    public FailureTracker(int windowSize, double failureRateThreshold, long openMillis, int maxFailedProbes) {
+        // fail fast on invalid settings instead of on the first host
+        new CircuitBreaker(windowSize, failureRateThreshold, openMillis, maxFailedProbes);
+
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.maxFailedProbes = maxFailedProbes;
+    }
+
+    /**
+     * Records a successful download.
+     *
+     * @param url           page url
+     * @param latencyMillis duration of the download
+     */
+    public void recordSuccess(String url, long latencyMillis) {
+        HostStats stats = getStats(Links.hostOf(url));
+        stats.requests.increment();
+        stats.latencyMillis.add(latencyMillis);
+        stats.breaker.recordSuccess();
+    }
+
+    /**
+     * Records a failed download.
+     *
+     * @param url           page url
+     * @param statusCode    response status, {@link FetchFailure#NO_STATUS} if there is no response
+     * @param cause         description of the failure
+     * @param latencyMillis duration of the download
+     */
+    public void recordFailure(String url, int statusCode, String cause, long latencyMillis) {
+        recordFailure(url, statusCode, cause, latencyMillis, isHostFailure(statusCode));
+    }
+
+    private void recordFailure(String url, int statusCode, String cause, long latencyMillis, boolean hostFailure) {
+        String host = Links.hostOf(url);
+        HostStats stats = getStats(host);
+        stats.requests.increment();
+        stats.latencyMillis.add(latencyMillis);
+        stats.failures.increment();
+        addFailure(stats, new FetchFailure(url, host, statusCode, cause, latencyMillis));
+        if (hostFailure) {
+            stats.breaker.recordFailure(System.nanoTime());
+        }
+    }
+
+    /**
+     * Tells whether the status means that the host can't serve requests now.
+     *
+     * @param statusCode response status, {@link FetchFailure#NO_STATUS} if there is no response
+     * @return true for a missing response, server errors and 429 Too Many Requests
+     */
+    public static boolean isHostFailure(int statusCode) {
+        return statusCode == FetchFailure.NO_STATUS || statusCode == 429 || (statusCode >= 500 && statusCode < 600);
+    }
+
+    /**
+     * Records a request which wasn't sent because the circuit breaker of the host is open.
+     *
+     * @param url page url
+     */
+    public void recordSkipped(String url) {
+        String host = Links.hostOf(url);
+        HostStats stats = getStats(host);
+        stats.skipped.increment();
+        addFailure(stats, new FetchFailure(url, host, FetchFailure.NO_STATUS, CIRCUIT_OPEN, 0));
+    }
+
+    /**
+     * Records an exception thrown while downloading. Only I/O errors, including timeouts, and errors
+     * of the browser count against the host.
+     *
+     * @param url           page url
+     * @param e             exception
+     * @param latencyMillis duration of the download
+     */
+    public void recordFailure(String url, Exception e, long latencyMillis) {
+        String cause = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+        recordFailure(url, FetchFailure.NO_STATUS, cause, latencyMillis,
+                e instanceof IOException || e instanceof RuntimeException);
+    }
+
+    private void addFailure(HostStats stats, FetchFailure failure) {
+        failures.add(failure);
+        String cause = failure.getStatusCode() != FetchFailure.NO_STATUS
+                ? "HTTP " + failure.getStatusCode()
+                : failure.getCause();
+        stats.causes.computeIfAbsent(cause, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Get circuit breaker of the host.
+     *
+     * @param host lower case host
+     * @return circuit breaker
+     */
+    public CircuitBreaker getBreaker(String host) {
+        return getStats(host).breaker;
+    }
+
+    private HostStats getStats(String host) {
+        return hosts.computeIfAbsent(host, key ->
+                new HostStats(new CircuitBreaker(windowSize, failureRateThreshold, openMillis, maxFailedProbes)));
+    }
+
+    /**
+     * Forgets all recorded outcomes, counters and circuit breakers, e.g. before the next crawl of a
+     * long running crawler. Breakers taken by {@link #getBreaker(String)} before aren't used anymore.
+     */
+    public void reset() {
+        hosts.clear();
+        failures.clear();
+    }
+
+    /**
+     * Removes and returns all recorded failures.
+     *
+     * @return failures in the order they were recorded
+     */
+    public List<FetchFailure> drainFailures() {
+        List<FetchFailure> drained = new ArrayList<FetchFailure>();
+        FetchFailure failure;
+        while ((failure = failures.poll()) != null) {
+            drained.add(failure);
+        }
+        return drained;
+    }
+
+    /**
+     * Summary of hosts with at least one failure, one line per host.
+     *
+     * @return summary lines
+     */
+    public List<String> summary() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, HostStats> entry : new TreeMap<String, HostStats>(hosts).entrySet()) {
+            HostStats stats = entry.getValue();
+            long failed = stats.failures.sum();
+            long skipped = stats.skipped.sum();
+            if (failed == 0 && skipped == 0) {
+                continue;
+            }
+            long requests = stats.requests.sum();
+            Map<String, Long> causes = new TreeMap<String, Long>();
+            for (Map.Entry<String, LongAdder> cause : stats.causes.entrySet()) {
+                causes.put(cause.getKey(), cause.getValue().sum());
+            }
+            lines.add(entry.getKey() + ": " + failed + " failed of " + requests + " requests"
+                    + (requests > 0 ? String.format(" (%.1f%%)", 100.0 * failed / requests) : "")
+                    + ", " + skipped + " skipped"
+                    + ", avg latency " + (requests > 0 ? stats.latencyMillis.sum() / requests : 0) + " ms"
+                    + ", breaker " + stats.breaker.getState()
+                    + ", causes " + causes);
+        }
+        return lines;
+    }
+
+    /**
+     * Counters of a single host.
+     */
+    private static final class HostStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder latencyMillis = new LongAdder();
+        final Map<String, LongAdder> causes = new ConcurrentHashMap<String, LongAdder>();
+        final CircuitBreaker breaker;
+
+        HostStats(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+    }
+}
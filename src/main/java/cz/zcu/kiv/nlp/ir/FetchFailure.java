@@ -0,0 +1,61 @@
+package cz.zcu.kiv.nlp.ir;
+
+/**
+ * Single failed download with its cause.
+ */
+public class FetchFailure {
+
+    /**
+     * Status code of failures without a response.
+     */
+    public static final int NO_STATUS = -1;
+
+    private final String url;
+    private final String host;
+    private final int statusCode;
+    private final String cause;
+    private final long latencyMillis;
+    private final long timestamp;
+
+    public FetchFailure(String url, String host, int statusCode, String cause, long latencyMillis) {
+        this.url = url;
+        this.host = host;
+        this.statusCode = statusCode;
+        this.cause = cause;
+        this.latencyMillis = latencyMillis;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getCause() {
+        return cause;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Tab separated line with url, status, latency and cause.
+     */
+    @Override
+    public String toString() {
+        return url + "\t" + (statusCode == NO_STATUS ? "-" : String.valueOf(statusCode)) + "\t" + latencyMillis
+                + " ms\t" + cause;
+    }
+}
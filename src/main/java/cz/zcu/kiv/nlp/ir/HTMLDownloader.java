@@ -1,21 +1,19 @@
 package cz.zcu.kiv.nlp.ir;
 
 import edu.uci.ics.crawler4j.crawler.CrawlConfig;
-import edu.uci.ics.crawler4j.crawler.Page;
 import edu.uci.ics.crawler4j.crawler.exceptions.PageBiggerThanMaxSizeException;
 import edu.uci.ics.crawler4j.fetcher.PageFetchResult;
 import edu.uci.ics.crawler4j.fetcher.PageFetcher;
-import edu.uci.ics.crawler4j.parser.HtmlParseData;
-import edu.uci.ics.crawler4j.parser.ParseData;
-import edu.uci.ics.crawler4j.parser.Parser;
 import edu.uci.ics.crawler4j.url.WebURL;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import us.codecraft.xsoup.Xsoup;
+import org.apache.http.ParseException;
+import org.apache.http.entity.ContentType;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,16 +24,33 @@ import java.util.Map;
  */
 public class HTMLDownloader extends AbstractHTMLDownloader {
 
-    private final Parser parser;
+    /**
+     * Size of the buffer a page is read through, pages are not read whole.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Buffers are shared by all downloaders, one is in use per running download.
+     */
+    private static final ByteBufferPool BUFFER_POOL = new ByteBufferPool(BUFFER_SIZE, 16);
+
     private final PageFetcher pageFetcher;
 
     /**
      * Constructor
      */
     public HTMLDownloader() {
-        super();
+        this(new FailureTracker());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param failureTracker tracker of download outcomes, may be shared with other downloaders
+     */
+    public HTMLDownloader(FailureTracker failureTracker) {
+        super(failureTracker);
         CrawlConfig config = new CrawlConfig();
-        parser = new Parser(config);
         pageFetcher = new PageFetcher(config);
 
         config.setMaxDepthOfCrawling(0);
@@ -43,125 +58,83 @@ public class HTMLDownloader extends AbstractHTMLDownloader {
     }
 
     /**
-     * Downloads given url
+     * Downloads given url page and extracts compiled xpath expressions.
+     * The response body is decoded through a pooled byte buffer and extracted while it is being read,
+     * so the page is never held in memory as a whole. A byte order mark of the page takes precedence
+     * over the charset declared by the server; if there is neither, the meta tag of the page is used.
      *
-     * @param url page url
-     * @return object representation of the html page on given url
+     * @param url  page url
+     * @param plan compiled xpath expressions
+     * @return pairs of descriptions and extracted values
      */
-    private Page download(String url) throws InterruptedException, PageBiggerThanMaxSizeException, IOException {
+    public Map<String, List<String>> processUrl(String url, ExtractionPlan plan) {
+        log.info("Processing: " + url);
+        long start = System.currentTimeMillis();
         WebURL curURL = new WebURL();
         curURL.setURL(url);
         PageFetchResult fetchResult = null;
-        Page page;
         try {
             fetchResult = pageFetcher.fetchPage(curURL);
             if (fetchResult.getStatusCode() == HttpStatus.SC_MOVED_PERMANENTLY) {
+                fetchResult.discardContentIfNotConsumed();
                 curURL.setURL(fetchResult.getMovedToUrl());
                 fetchResult = pageFetcher.fetchPage(curURL);
             }
-            if (fetchResult.getStatusCode() == HttpStatus.SC_OK) {
-                try {
-                    page = new Page(curURL);
-                    fetchResult.fetchContent(page);
-                    parser.parse(page, curURL.getURL());
-                    return page;
-                } catch (Exception e) {
-                    e.printStackTrace();
+            if (fetchResult.getStatusCode() != HttpStatus.SC_OK) {
+                log.info("Couldn't fetch the content of the page, status " + fetchResult.getStatusCode());
+                failureTracker.recordFailure(url, fetchResult.getStatusCode(), "unexpected status",
+                        System.currentTimeMillis() - start);
+            } else if (fetchResult.getEntity() == null) {
+                log.info("Couldn't fetch the content of the page.");
+                failureTracker.recordFailure(url, fetchResult.getStatusCode(), "empty response",
+                        System.currentTimeMillis() - start);
+            } else {
+                HttpEntity entity = fetchResult.getEntity();
+                Map<String, List<String>> results;
+                try (Reader reader = DecodingReader.open(entity.getContent(), getCharset(entity), BUFFER_POOL)) {
+                    results = extractor.extract(reader, plan);
                 }
+                failureTracker.recordSuccess(url, System.currentTimeMillis() - start);
+                return results;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failureTracker.recordFailure(url, e, System.currentTimeMillis() - start);
+        } catch (PageBiggerThanMaxSizeException | IOException e) {
+            log.warn("Couldn't fetch the content of the page: " + e);
+            failureTracker.recordFailure(url, e, System.currentTimeMillis() - start);
         } finally {
             if (fetchResult != null) {
                 fetchResult.discardContentIfNotConsumed();
             }
         }
-        return null;
+        return new HashMap<String, List<String>>();
     }
 
     /**
-     * Downloads given url page and extracts xpath expressions.
+     * Charset declared in the response headers.
      *
-     * @param url      page url
-     * @param xpathMap pairs of description and xpath expression
-     * @return pairs of descriptions and extracted values
+     * @param entity response entity
+     * @return charset, null if the server doesn't declare any or it is unknown
      */
-    public Map<String, List<String>> processUrl(String url, Map<String, String> xpathMap) {
-        Map<String, List<String>> results = new HashMap<String, List<String>>();
-
-        log.info("Processing: " + url);
-        Page page = null;
+    private Charset getCharset(HttpEntity entity) {
         try {
-            page = download(url);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (PageBiggerThanMaxSizeException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        if (page != null) {
-            ParseData parseData = page.getParseData();
-            if (parseData != null) {
-                if (parseData instanceof HtmlParseData) {
-                    Document document = Jsoup.parse(((HtmlParseData) parseData).getHtml());
-
-                    for (String key : xpathMap.keySet()) {
-                        ArrayList<String> list = new ArrayList<String>();
-                        list.addAll(Xsoup.compile(xpathMap.get(key)).evaluate(document).list());
-                        results.put(key, list);
-                    }
-                }
-            } else {
-                log.info("Couldn't parse the content of the page.");
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null) {
+                return contentType.getCharset();
             }
-        } else {
-            log.info("Couldn't fetch the content of the page.");
-            failedLinks.add(url);
+        } catch (ParseException | UnsupportedCharsetException e) {
+            log.info("Unknown charset of the page, detecting it from the content.");
         }
-        return results;
+        return null;
     }
 
-
     /**
-     * Downloads given url page and extracts xpath expression.
-     *
-     * @param url   page url
-     * @param xPath xpath expression
-     * @return list of extracted values
+     * Closes the connection pool of the fetcher
      */
-    public List<String> getLinks(String url, String xPath) {
-        ArrayList<String> list = new ArrayList<String>();
-        log.info("Processing: " + url);
-        Page page = null;
-        try {
-            page = download(url);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (PageBiggerThanMaxSizeException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        if (page != null) {
-            ParseData parseData = page.getParseData();
-            if (parseData != null) {
-                if (parseData instanceof HtmlParseData) {
-                    Document document = Jsoup.parse(((HtmlParseData) parseData).getHtml());
-                    List<String> xlist = Xsoup.compile(xPath).evaluate(document).list();
-                    list.addAll(xlist);
-                }
-            } else {
-                log.info("Couldn't parse the content of the page.");
-            }
-        } else {
-            log.info("Couldn't fetch the content of the page.");
-            failedLinks.add(url);
-        }
-        return list;
-    }
-
     @Override
     public void quit() {
-        //no need to clean up anything
+        pageFetcher.shutDown();
     }
 }
 
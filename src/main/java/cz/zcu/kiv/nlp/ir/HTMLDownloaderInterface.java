@@ -2,7 +2,6 @@ package cz.zcu.kiv.nlp.ir;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * This class is a demonstration of how crawler can be used to download a website
@@ -11,16 +10,11 @@ import java.util.Set;
 public interface HTMLDownloaderInterface {
 
     /**
-     * Get failed links.
+     * Get tracker of download outcomes, may be shared with other downloaders.
      *
-     * @return failed links
+     * @return failure tracker
      */
-    public Set<String> getFailedLinks();
-
-    /**
-     * Empty the empty links set
-     */
-    public void emptyFailedLinks();
+    public FailureTracker getFailureTracker();
 
 
     /**
@@ -32,6 +26,15 @@ public interface HTMLDownloaderInterface {
      */
     public Map<String, List<String>> processUrl(String url, Map<String, String> xpathMap);
 
+    /**
+     * Downloads given url page and extracts compiled xpath expressions.
+     *
+     * @param url  page url
+     * @param plan compiled xpath expressions
+     * @return pairs of descriptions and extracted values
+     */
+    public Map<String, List<String>> processUrl(String url, ExtractionPlan plan);
+
 
     /**
      * Downloads given url page and extracts xpath expression.
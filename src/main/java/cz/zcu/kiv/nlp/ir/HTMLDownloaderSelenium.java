@@ -1,12 +1,12 @@
 package cz.zcu.kiv.nlp.ir;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.chrome.ChromeDriver;
-import us.codecraft.xsoup.Xsoup;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,13 +18,28 @@ import java.util.Map;
  */
 public class HTMLDownloaderSelenium extends AbstractHTMLDownloader {
 
+    /**
+     * Status of the main document from the Navigation Timing API, null if the browser doesn't report it.
+     */
+    private static final String STATUS_SCRIPT = "var entry = performance.getEntriesByType('navigation')[0];"
+            + " return entry && entry.responseStatus ? entry.responseStatus : null;";
+
     WebDriver driver;
 
     /**
      * Constructor
      */
     public HTMLDownloaderSelenium() {
-        super();
+        this(new FailureTracker());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param failureTracker tracker of download outcomes, may be shared with other downloaders
+     */
+    public HTMLDownloaderSelenium(FailureTracker failureTracker) {
+        super(failureTracker);
         System.setProperty("webdriver.chrome.driver", "./chromedriver");
         driver = new ChromeDriver();
     }
@@ -37,53 +52,59 @@ public class HTMLDownloaderSelenium extends AbstractHTMLDownloader {
     }
 
     /**
-     * Downloads given url page and extracts xpath expressions.
+     * Downloads given url page and extracts compiled xpath expressions.
+     * The page source still has to be pulled from the browser as a whole, but only the matching
+     * subtrees are parsed. Pages the server answered with an error status, e.g. its 503 page, are
+     * recorded as failures with the status and aren't extracted.
      *
-     * @param url      page url
-     * @param xpathMap pairs of description and xpath expression
+     * @param url  page url
+     * @param plan compiled xpath expressions
      * @return pairs of descriptions and extracted values
      */
-    public Map<String, List<String>> processUrl(String url, Map<String, String> xpathMap) {
-        Map<String, List<String>> results = new HashMap<String, List<String>>();
-
+    public Map<String, List<String>> processUrl(String url, ExtractionPlan plan) {
         log.info("Processing: " + url);
-        driver.get(url);
-        String dom = driver.getPageSource();
+        long start = System.currentTimeMillis();
+        String dom;
+        int status;
+        try {
+            driver.get(url);
+            status = getStatus();
+            dom = driver.getPageSource();
+        } catch (WebDriverException e) {
+            log.warn("Couldn't fetch the content of the page: " + e.getMessage());
+            failureTracker.recordFailure(url, e, System.currentTimeMillis() - start);
+            return new HashMap<String, List<String>>();
+        }
+        if (status != FetchFailure.NO_STATUS && (status < 200 || status >= 300)) {
+            log.info("Couldn't fetch the content of the page, status " + status);
+            failureTracker.recordFailure(url, status, "unexpected status", System.currentTimeMillis() - start);
+            return new HashMap<String, List<String>>();
+        }
         if (dom != null) {
-            Document document = Jsoup.parse(dom);
-
-            for (String key : xpathMap.keySet()) {
-                ArrayList<String> list = new ArrayList<String>();
-                list.addAll(Xsoup.compile(xpathMap.get(key)).evaluate(document).list());
-                results.put(key, list);
+            failureTracker.recordSuccess(url, System.currentTimeMillis() - start);
+            try {
+                return extractor.extract(new StringReader(dom), plan);
+            } catch (IOException e) {
+                // reading from a string can't fail
+                throw new IllegalStateException(e);
             }
-        } else {
-            log.info("Couldn't fetch the content of the page.");
-            failedLinks.add(url);
         }
-        return results;
+        log.info("Couldn't fetch the content of the page.");
+        failureTracker.recordFailure(url, FetchFailure.NO_STATUS, "empty page source",
+                System.currentTimeMillis() - start);
+        return new HashMap<String, List<String>>();
     }
 
     /**
-     * Downloads given url page and extracts xpath expression.
+     * Status of the loaded page. Chrome reports it since version 109, older browsers don't.
      *
-     * @param url   page url
-     * @param xPath xpath expression
-     * @return list of extracted values
+     * @return HTTP status, {@link FetchFailure#NO_STATUS} if it isn't known
      */
-    public List<String> getLinks(String url, String xPath) {
-        ArrayList<String> list = new ArrayList<String>();
-        log.info("Processing: " + url);
-        driver.get(url);
-        String dom = driver.getPageSource();
-        if (dom != null) {
-            Document document = Jsoup.parse(dom);
-            List<String> xlist = Xsoup.compile(xPath).evaluate(document).list();
-            list.addAll(xlist);
-        } else {
-            log.info("Couldn't fetch the content of the page.");
-            failedLinks.add(url);
+    private int getStatus() {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return FetchFailure.NO_STATUS;
         }
-        return list;
+        Object status = ((JavascriptExecutor) driver).executeScript(STATUS_SCRIPT);
+        return status instanceof Number ? ((Number) status).intValue() : FetchFailure.NO_STATUS;
     }
 }
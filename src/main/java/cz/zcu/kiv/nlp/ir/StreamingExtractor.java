@@ -0,0 +1,422 @@
+package cz.zcu.kiv.nlp.ir;
+
+import org.apache.log4j.Logger;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts xpath expressions from a page while it is being read.
+ * <p>
+ * The page is scanned tag by tag without building a DOM. Only the subtrees matching the leading
+ * steps of the {@link ExtractionPlan} are kept and parsed, and the expressions are evaluated on
+ * them. Reading stops once every step has reached its number of matches or once the body cap of
+ * the plan is exceeded. The extractor holds no state and may be shared between threads.
+ */
+public class StreamingExtractor {
+
+    private static final Logger log = Logger.getLogger(StreamingExtractor.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String[] RAW_TEXT_TAGS = {"script", "style", "textarea", "title"};
+
+    private static final Set<String> VOID_TAGS = new HashSet<String>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source",
+            "track", "wbr"));
+
+    /**
+     * Reads the page and extracts all expressions of the plan.
+     *
+     * @param reader page source, it is not closed
+     * @param plan   compiled expressions
+     * @return pairs of descriptions and extracted values
+     * @throws IOException if reading fails
+     */
+    public Map<String, List<String>> extract(Reader reader, ExtractionPlan plan) throws IOException {
+        Scan scan = new Scan(reader, plan);
+        if (plan.isStreamable()) {
+            scan.run();
+        } else {
+            scan.parseWhole();
+        }
+        if (scan.truncated) {
+            log.info("Page body exceeded " + plan.getMaxBodyChars() + " characters, the rest was skipped.");
+        }
+        return scan.results;
+    }
+
+    /**
+     * State of a single extraction.
+     */
+    private static final class Scan {
+        private final Reader reader;
+        private final ExtractionPlan plan;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long consumed;
+        private boolean truncated;
+
+        private final StringBuilder tag = new StringBuilder(256);
+        private final List<Capture> active = new ArrayList<Capture>();
+        private final int[] found;
+        private int openGroups;
+        private final Map<String, List<String>> results = new HashMap<String, List<String>>();
+
+        Scan(Reader reader, ExtractionPlan plan) {
+            this.reader = reader;
+            this.plan = plan;
+            this.found = new int[plan.getGroups().size()];
+            this.openGroups = plan.getGroups().size();
+            for (String key : plan.getKeys()) {
+                results.put(key, new ArrayList<String>());
+            }
+        }
+
+        void parseWhole() throws IOException {
+            StringBuilder html = new StringBuilder();
+            int c;
+            while ((c = read()) != -1) {
+                html.append((char) c);
+            }
+            Document document = Jsoup.parse(html.toString());
+            for (String key : plan.getKeys()) {
+                results.get(key).addAll(plan.getEvaluator(key).evaluate(document).list());
+            }
+        }
+
+        void run() throws IOException {
+            int c;
+            while (openGroups > 0 && (c = read()) != -1) {
+                if (c == '<') {
+                    readMarkup();
+                } else if (!active.isEmpty()) {
+                    append((char) c);
+                }
+            }
+            // unclosed subtrees at the end of the page or of the body cap
+            while (!active.isEmpty()) {
+                finish(active.remove(active.size() - 1));
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                int remaining = (int) Math.min(buffer.length, plan.getMaxBodyChars() - consumed);
+                if (remaining <= 0) {
+                    truncated = truncated || reader.read() != -1;
+                    return -1;
+                }
+                int count = reader.read(buffer, 0, remaining);
+                if (count == -1) {
+                    return -1;
+                }
+                position = 0;
+                limit = count;
+                consumed += count;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            int c = read();
+            if (c != -1) {
+                position--;
+            }
+            return c;
+        }
+
+        private void readMarkup() throws IOException {
+            int next = peek();
+            if (next == '!' || next == '?') {
+                readDeclaration();
+            } else if (next == '/') {
+                read();
+                readTag(true);
+                handleClose();
+            } else if (Character.isLetter(next)) {
+                readTag(false);
+                handleOpen();
+            } else if (!active.isEmpty()) {
+                append('<');
+            }
+        }
+
+        /**
+         * Reads comment, doctype or processing instruction and passes it to the captures as is.
+         */
+        private void readDeclaration() throws IOException {
+            tag.setLength(0);
+            tag.append('<');
+            int c;
+            while ((c = read()) != -1) {
+                tag.append((char) c);
+                if (c == '>' && (!isComment() || endsWith("-->"))) {
+                    break;
+                }
+            }
+            append(tag);
+        }
+
+        /**
+         * Reads the tag up to the closing '>' into the tag buffer, skipping '>' in quoted attribute values.
+         */
+        private void readTag(boolean closing) throws IOException {
+            tag.setLength(0);
+            tag.append(closing ? "</" : "<");
+            char quote = 0;
+            boolean afterEquals = false;
+            int c;
+            while ((c = read()) != -1) {
+                tag.append((char) c);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '>') {
+                    return;
+                } else if ((c == '"' || c == '\'') && afterEquals) {
+                    quote = (char) c;
+                    afterEquals = false;
+                } else if (c == '=') {
+                    afterEquals = true;
+                } else if (!Character.isWhitespace(c)) {
+                    afterEquals = false;
+                }
+            }
+        }
+
+        private void handleOpen() throws IOException {
+            boolean selfClosing = tag.length() > 2 && tag.charAt(tag.length() - 2) == '/';
+            for (Capture capture : active) {
+                capture.html.append(tag);
+                if (!selfClosing && nameIs(capture.group.tagName, 1)) {
+                    capture.depth++;
+                }
+            }
+
+            for (ExtractionPlan.Group group : plan.getGroups()) {
+                if (found[group.index] >= group.maxMatches || !nameIs(group.tagName, 1) || isActive(group)
+                        || !group.accepts(attributeValue(group.attribute))) {
+                    continue;
+                }
+                Capture capture = new Capture(group, tag);
+                if (selfClosing || VOID_TAGS.contains(group.tagName)) {
+                    finish(capture);
+                } else {
+                    active.add(capture);
+                }
+            }
+
+            if (!selfClosing) {
+                for (String rawTextTag : RAW_TEXT_TAGS) {
+                    if (nameIs(rawTextTag, 1)) {
+                        skipRawText(rawTextTag);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void handleClose() throws IOException {
+            if (active.isEmpty()) {
+                return;
+            }
+            append(tag);
+            for (int i = active.size() - 1; i >= 0; i--) {
+                Capture capture = active.get(i);
+                if (nameIs(capture.group.tagName, 2) && --capture.depth == 0) {
+                    active.remove(i);
+                    finish(capture);
+                }
+            }
+        }
+
+        /**
+         * Reads content of script or style, which may contain '<', up to its closing tag.
+         */
+        private void skipRawText(String tagName) throws IOException {
+            int c;
+            while ((c = read()) != -1) {
+                if (c != '<' || peek() != '/') {
+                    if (!active.isEmpty()) {
+                        append((char) c);
+                    }
+                    continue;
+                }
+                read();
+                readTag(true);
+                if (nameIs(tagName, 2)) {
+                    handleClose();
+                    return;
+                }
+                append(tag);
+            }
+        }
+
+        private void finish(Capture capture) {
+            Document fragment = Jsoup.parseBodyFragment(capture.html.toString());
+            for (String key : capture.group.keys) {
+                results.get(key).addAll(plan.getEvaluator(key).evaluate(fragment).list());
+            }
+            if (++found[capture.group.index] == capture.group.maxMatches) {
+                openGroups--;
+            }
+        }
+
+        private boolean isActive(ExtractionPlan.Group group) {
+            for (Capture capture : active) {
+                if (capture.group == group) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void append(char c) {
+            for (Capture capture : active) {
+                capture.html.append(c);
+            }
+        }
+
+        private void append(CharSequence text) {
+            for (Capture capture : active) {
+                capture.html.append(text);
+            }
+        }
+
+        /**
+         * Compares the tag name in the tag buffer, ignoring case.
+         *
+         * @param name   lower case name
+         * @param offset start of the name in the tag buffer
+         * @return true if the tag has the given name
+         */
+        private boolean nameIs(String name, int offset) {
+            int end = offset + name.length();
+            if (tag.length() < end) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (Character.toLowerCase(tag.charAt(offset + i)) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return end == tag.length() || isNameEnd(tag.charAt(end));
+        }
+
+        /**
+         * Finds value of the attribute in the open tag in the tag buffer.
+         *
+         * @param name lower case attribute name, may be null
+         * @return attribute value, empty string for attribute without value, null if it is missing
+         */
+        private String attributeValue(String name) {
+            if (name == null) {
+                return null;
+            }
+            int i = 1;
+            int length = tag.length();
+            while (i < length && !isNameEnd(tag.charAt(i))) {
+                i++;
+            }
+            while (i < length) {
+                char c = tag.charAt(i);
+                if (Character.isWhitespace(c) || c == '/') {
+                    i++;
+                    continue;
+                }
+                if (c == '>') {
+                    return null;
+                }
+                int nameStart = i;
+                while (i < length && !isNameEnd(tag.charAt(i)) && tag.charAt(i) != '=') {
+                    i++;
+                }
+                boolean matches = regionIs(name, nameStart, i);
+                while (i < length && Character.isWhitespace(tag.charAt(i))) {
+                    i++;
+                }
+                if (i >= length || tag.charAt(i) != '=') {
+                    if (matches) {
+                        return "";
+                    }
+                    continue;
+                }
+                i++;
+                while (i < length && Character.isWhitespace(tag.charAt(i))) {
+                    i++;
+                }
+                int valueStart;
+                int valueEnd;
+                if (i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+                    char quote = tag.charAt(i);
+                    valueStart = ++i;
+                    while (i < length && tag.charAt(i) != quote) {
+                        i++;
+                    }
+                    valueEnd = i++;
+                } else {
+                    valueStart = i;
+                    while (i < length && !Character.isWhitespace(tag.charAt(i)) && tag.charAt(i) != '>') {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                if (matches) {
+                    return tag.substring(valueStart, Math.min(valueEnd, length));
+                }
+            }
+            return null;
+        }
+
+        private boolean regionIs(String name, int start, int end) {
+            if (end - start != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (Character.toLowerCase(tag.charAt(start + i)) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isComment() {
+            return tag.length() >= 4 && tag.charAt(1) == '!' && tag.charAt(2) == '-' && tag.charAt(3) == '-';
+        }
+
+        private boolean endsWith(String suffix) {
+            int start = tag.length() - suffix.length();
+            return start >= 0 && tag.indexOf(suffix, start) == start;
+        }
+
+        private static boolean isNameEnd(char c) {
+            return Character.isWhitespace(c) || c == '/' || c == '>';
+        }
+    }
+
+    /**
+     * Subtree being captured for one leading step.
+     */
+    private static final class Capture {
+        final ExtractionPlan.Group group;
+        final StringBuilder html = new StringBuilder(4096);
+        int depth = 1;
+
+        Capture(ExtractionPlan.Group group, CharSequence openTag) {
+            this.group = group;
+            html.append(openTag);
+        }
+    }
+}
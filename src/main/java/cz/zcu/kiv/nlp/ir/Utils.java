@@ -1,6 +1,7 @@
 package cz.zcu.kiv.nlp.ir;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -8,7 +9,7 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Utils for I/O operations
+ * Utils for I/O operations, files are read and written in UTF-8
  * Created by Tigi on 22.9.2014.
  */
 public class Utils {
@@ -22,7 +23,8 @@ public class Utils {
      */
     public static void saveFile(File file, String text) {
         try {
-            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)), false,
+                    StandardCharsets.UTF_8);
             printStream.print(text);
             printStream.close();
         } catch (FileNotFoundException e) {
@@ -39,12 +41,15 @@ public class Utils {
      */
     public static void saveFile(File file, Map<String, List<String>> results, Map<String, String> idMap) {
         try {
-            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)), false,
+                    StandardCharsets.UTF_8);
             for (String key : idMap.keySet()) {
                 List<String> resultList = results.get(key);
                 String line = idMap.get(key);
                 for (String result : resultList) {
-                    printStream.println(line + "\t" + result);
+                    printStream.print(line);
+                    printStream.print('\t');
+                    printStream.println(result);
                 }
             }
             printStream.close();
@@ -68,7 +73,7 @@ public class Utils {
         try {
             List<String> result = new ArrayList<String>();
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
+            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
             String line;
 
             while ((line = br.readLine()) != null) {
@@ -91,7 +96,8 @@ public class Utils {
      */
     public static void saveFile(File file, Collection<String> list) {
         try {
-            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)), false,
+                    StandardCharsets.UTF_8);
             for (String text : list) {
                 printStream.println(text);
             }
@@ -115,7 +121,7 @@ public class Utils {
         try {
             List<String> result = new ArrayList<String>();
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
+            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
             String line;
 
             while ((line = br.readLine()) != null) {
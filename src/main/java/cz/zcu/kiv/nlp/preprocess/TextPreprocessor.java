@@ -0,0 +1,194 @@
+package cz.zcu.kiv.nlp.preprocess;
+
+import cz.zcu.kiv.nlp.Storage;
+import cz.zcu.kiv.nlp.ir.Utils;
+import cz.zcu.kiv.nlp.vs.PostProcessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+
+/**
+ * Tokenizes extracted texts on a fork-join pool, while the crawl workers go on downloading.
+ * <p>
+ * For every configured key two files are written next to the extracted values: the token
+ * stream ({@code url \t token token ...}) and the term counts ({@code url \t term:count ...}).
+ */
+public class TextPreprocessor implements PostProcessor {
+
+    private static final Logger log = Logger.getLogger(TextPreprocessor.class);
+
+    private final ForkJoinPool pool;
+    private final Tokenizer tokenizer;
+    private final List<String> keys;
+
+    private final Map<String, PrintStream> tokenStreams = new HashMap<String, PrintStream>();
+    private final Map<String, PrintStream> termStreams = new HashMap<String, PrintStream>();
+    /**
+     * Tracks pages still being processed, the processor itself is one party until it is finished.
+     * The output files are closed by the last page.
+     */
+    private final Phaser pending = new Phaser(1) {
+        @Override
+        protected boolean onAdvance(final int phase, final int registeredParties) {
+            closePrintStreams();
+            return true;
+        }
+    };
+
+    /**
+     * @param pool      pool to run on, may be shared by more jobs
+     * @param tokenizer tokenizer
+     * @param keys      descriptions of the extracted values to tokenize
+     */
+    public TextPreprocessor(final ForkJoinPool pool, final Tokenizer tokenizer, final List<String> keys) {
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool may not be null");
+        }
+        if (tokenizer == null) {
+            throw new IllegalArgumentException("Tokenizer may not be null");
+        }
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("Keys to preprocess may not be empty");
+        }
+
+        this.pool = pool;
+        this.tokenizer = tokenizer;
+        this.keys = new ArrayList<String>(keys);
+    }
+
+    @Override
+    public void start(final Storage storage) {
+        final String timestamp = Utils.SDF.format(System.currentTimeMillis());
+        for (String key : keys) {
+            tokenStreams.put(key, createPrintStream(storage.createFile(timestamp + "_" + key + "_tokens.txt")));
+            termStreams.put(key, createPrintStream(storage.createFile(timestamp + "_" + key + "_terms.txt")));
+        }
+    }
+
+    private PrintStream createPrintStream(final File file) {
+        try {
+            return new PrintStream(new BufferedOutputStream(new FileOutputStream(file)), false, StandardCharsets.UTF_8);
+        } catch (FileNotFoundException e) {
+            log.error("Output file can't be created: " + file, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void process(final String url, final Map<String, List<String>> products) {
+        for (String key : keys) {
+            final List<String> values = products.get(key);
+            if (values == null || values.isEmpty()) {
+                continue;
+            }
+
+            pending.register();
+            pool.execute(() -> {
+                try {
+                    final var result = new TokenizeTask(tokenizer, join(values)).invoke();
+                    write(key, url, result);
+                } catch (RuntimeException e) {
+                    log.error("Preprocessing of " + url + " failed", e);
+                } finally {
+                    pending.arriveAndDeregister();
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies the values into a single array, separated by new lines.
+     */
+    private static char[] join(final List<String> values) {
+        int length = values.size() - 1;
+        for (String value : values) {
+            length += value.length();
+        }
+
+        final char[] text = new char[length];
+        int position = 0;
+        for (String value : values) {
+            if (position > 0) {
+                text[position++] = '\n';
+            }
+            value.getChars(0, value.length(), text, position);
+            position += value.length();
+        }
+        return text;
+    }
+
+    private synchronized void write(final String key, final String url, final TokenizeTask.Result result) {
+        final PrintStream tokenStream = tokenStreams.get(key);
+        if (tokenStream != null) {
+            tokenStream.print(url);
+            tokenStream.print('\t');
+            printSeparated(tokenStream, result.getTokens());
+            tokenStream.println();
+        }
+
+        final PrintStream termStream = termStreams.get(key);
+        if (termStream != null) {
+            termStream.print(url);
+            termStream.print('\t');
+            boolean first = true;
+            for (Map.Entry<String, Integer> entry : new TreeMap<String, Integer>(result.getCounts()).entrySet()) {
+                if (!first) {
+                    termStream.print(' ');
+                }
+                termStream.print(entry.getKey());
+                termStream.print(':');
+                termStream.print(entry.getValue().intValue());
+                first = false;
+            }
+            termStream.println();
+        }
+    }
+
+    /**
+     * Prints the tokens separated by spaces, without joining them into a string first.
+     */
+    private static void printSeparated(final PrintStream stream, final List<String> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                stream.print(' ');
+            }
+            stream.print(tokens.get(i));
+        }
+    }
+
+    @Override
+    public void finish() {
+        pending.arriveAndDeregister();
+    }
+
+    @Override
+    public void awaitFinished() {
+        pending.awaitAdvance(0);
+    }
+
+    private synchronized void closePrintStreams() {
+        for (PrintStream printStream : tokenStreams.values()) {
+            if (printStream != null) {
+                printStream.close();
+            }
+        }
+        for (PrintStream printStream : termStreams.values()) {
+            if (printStream != null) {
+                printStream.close();
+            }
+        }
+    }
+}
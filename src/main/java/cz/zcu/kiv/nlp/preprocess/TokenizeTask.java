@@ -0,0 +1,85 @@
+package cz.zcu.kiv.nlp.preprocess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tokenizes text on a fork-join pool. Long texts are split in halves at a token boundary
+ * and the halves are tokenized in parallel.
+ */
+public class TokenizeTask extends RecursiveTask<TokenizeTask.Result> {
+
+    /**
+     * Texts shorter than this are tokenized in the calling thread.
+     */
+    static final int SPLIT_THRESHOLD = 16 * 1024;
+
+    private final Tokenizer tokenizer;
+    private final char[] text;
+    private final int from;
+    private final int to;
+
+    public TokenizeTask(final Tokenizer tokenizer, final char[] text) {
+        this(tokenizer, text, 0, text.length);
+    }
+
+    private TokenizeTask(final Tokenizer tokenizer, final char[] text, final int from, final int to) {
+        this.tokenizer = tokenizer;
+        this.text = text;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Result compute() {
+        final int middle = tokenBoundary(from + (to - from) / 2);
+        if (to - from > SPLIT_THRESHOLD && middle < to) {
+            final TokenizeTask left = new TokenizeTask(tokenizer, text, from, middle);
+            final TokenizeTask right = new TokenizeTask(tokenizer, text, middle, to);
+            left.fork();
+            final Result rightResult = right.compute();
+            return left.join().append(rightResult);
+        }
+
+        final Result result = new Result();
+        tokenizer.tokenize(text, from, to, result.tokens, result.counts);
+        return result;
+    }
+
+    /**
+     * First position at or after the given one which isn't inside a token.
+     */
+    private int tokenBoundary(int position) {
+        while (position < to && Character.isLetterOrDigit(text[position])) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Token stream and term counts of a text.
+     */
+    public static final class Result {
+        private final List<String> tokens = new ArrayList<String>();
+        private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        public List<String> getTokens() {
+            return tokens;
+        }
+
+        public Map<String, Integer> getCounts() {
+            return counts;
+        }
+
+        private Result append(final Result next) {
+            tokens.addAll(next.tokens);
+            for (Map.Entry<String, Integer> entry : next.counts.entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+            return this;
+        }
+    }
+}
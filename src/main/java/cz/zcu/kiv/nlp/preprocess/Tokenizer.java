@@ -0,0 +1,109 @@
+package cz.zcu.kiv.nlp.preprocess;
+
+import cz.zcu.kiv.nlp.ir.Utils;
+
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits text into lower case tokens without diacritics and drops stop words.
+ * <p>
+ * All transforms are done in a single pass over the characters, a string is created only
+ * for the resulting token. Tokens are maximal runs of letters and digits.
+ */
+public class Tokenizer {
+
+    /**
+     * Lower case characters of Latin-1 and Latin Extended-A mapped to their base letter.
+     */
+    private static final char[] FOLD = new char[0x250];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            FOLD[c] = c;
+            if (c >= 0xC0 && Character.isLetter(c)) {
+                final char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+                if (base < 0x80) {
+                    FOLD[c] = base;
+                }
+            }
+        }
+    }
+
+    private final Set<String> stopWords;
+
+    /**
+     * @param stopWords normalized stop words, i.e. lower case and without diacritics
+     */
+    public Tokenizer(final Set<String> stopWords) {
+        this.stopWords = stopWords != null ? stopWords : Collections.<String>emptySet();
+    }
+
+    /**
+     * Reads stop words, one per line, and normalizes them.
+     *
+     * @param inputStream stream
+     * @return normalized stop words
+     */
+    public static Set<String> loadStopWords(final InputStream inputStream) {
+        final Set<String> stopWords = new HashSet<String>();
+        for (String line : Utils.readLines(inputStream)) {
+            final char[] chars = line.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = normalize(chars[i]);
+            }
+            stopWords.add(new String(chars));
+        }
+        return stopWords;
+    }
+
+    /**
+     * Lower case character without diacritics.
+     *
+     * @param c character
+     * @return normalized character
+     */
+    public static char normalize(final char c) {
+        final char lower = Character.toLowerCase(c);
+        return lower < FOLD.length ? FOLD[lower] : lower;
+    }
+
+    /**
+     * Tokenizes part of the text.
+     *
+     * @param text   text
+     * @param from   first character, inclusive
+     * @param to     last character, exclusive
+     * @param tokens token stream to append to
+     * @param counts term counts to update
+     */
+    public void tokenize(final char[] text, final int from, final int to, final List<String> tokens,
+            final Map<String, Integer> counts) {
+        char[] buffer = new char[64];
+        int length = 0;
+        for (int i = from; i <= to; i++) {
+            if (i < to && Character.isLetterOrDigit(text[i])) {
+                if (length == buffer.length) {
+                    final char[] bigger = new char[buffer.length * 2];
+                    System.arraycopy(buffer, 0, bigger, 0, length);
+                    buffer = bigger;
+                }
+                buffer[length++] = normalize(text[i]);
+                continue;
+            }
+            if (length > 0) {
+                final String term = new String(buffer, 0, length);
+                if (!stopWords.contains(term)) {
+                    tokens.add(term);
+                    counts.merge(term, 1, Integer::sum);
+                }
+                length = 0;
+            }
+        }
+    }
+}
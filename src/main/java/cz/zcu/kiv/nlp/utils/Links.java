@@ -1,8 +1,22 @@
 package cz.zcu.kiv.nlp.utils;
 
+import java.net.URI;
+
 public class Links {
 
   public static String prependBaseUrlIfNeeded(final String url, final String baseUrl) {
     return url.startsWith(baseUrl) ? url : baseUrl + url;
   }
+
+  /**
+   * Lower case host of the url, the url itself if it has none.
+   */
+  public static String hostOf(final String url) {
+    try {
+      final var host = URI.create(url).getHost();
+      return host != null ? host.toLowerCase() : url;
+    } catch (IllegalArgumentException e) {
+      return url;
+    }
+  }
 }
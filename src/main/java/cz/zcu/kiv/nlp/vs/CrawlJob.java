@@ -0,0 +1,241 @@
+package cz.zcu.kiv.nlp.vs;
+
+import cz.zcu.kiv.nlp.ir.ExtractionPlan;
+import cz.zcu.kiv.nlp.utils.Links;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Definition of a crawl of a single site.
+ * <p>
+ * Jobs are loaded from properties in the following form:
+ * <pre>
+ * jobs=hokej
+ * workers=1
+ * job.hokej.site=https://www.hokej.cz
+ * job.hokej.seeds=https://www.hokej.cz
+ * job.hokej.links.1=//article/a/@href
+ * job.hokej.extract.tidyText=//div[contains(@class, 'article')]/tidyText()
+ * job.hokej.maxMatches=1
+ * job.hokej.maxBodyChars=1048576
+ * job.hokej.storage=./storage/hokej-cz
+ * job.hokej.urls=_urls.txt
+ * job.hokej.politeness=1200
+ * job.hokej.preprocess=tidyText
+ * job.hokej.stopwords=./stopwords.txt
+ * </pre>
+ * Seeds default to the site, {@code urls} defaults to {@value #DEFAULT_URLS_STORAGE_PATH}. Link and
+ * extraction expressions are numbered/named keys since xpath expressions may contain commas.
+ * {@code maxMatches} is the number of matching subtrees of an extraction expression after which
+ * its extraction is finished, and {@code maxBodyChars} caps the read part of a page; without them
+ * pages are read to the end, up to {@link ExtractionPlan#DEFAULT_MAX_BODY_CHARS} characters.
+ * {@code preprocess} lists extracted values to tokenize, without it no preprocessing is done;
+ * {@code stopwords} defaults to the bundled Czech stop words.
+ */
+public class CrawlJob {
+
+    public static final String DEFAULT_URLS_STORAGE_PATH = "_urls.txt";
+
+    private final String name;
+    private final String site;
+    private final List<String> seeds;
+    private final List<String> linkXPaths;
+    private final Map<String, String> xpathMap;
+    private final int maxMatches;
+    private final int maxBodyChars;
+    private final String storagePath;
+    private final String urlsStoragePath;
+    private final int politenessIntervalMillis;
+    private final List<String> preprocessKeys;
+    private final String stopWordsPath;
+
+    public CrawlJob(final String name, final String site, final List<String> seeds, final List<String> linkXPaths,
+            final Map<String, String> xpathMap, final int maxMatches, final int maxBodyChars,
+            final String storagePath, final String urlsStoragePath, final int politenessIntervalMillis,
+            final List<String> preprocessKeys, final String stopWordsPath) {
+        if (StringUtils.isBlank(site)) {
+            throw new IllegalArgumentException("Site of job " + name + " may not be blank");
+        }
+        if (xpathMap == null || xpathMap.isEmpty()) {
+            throw new IllegalArgumentException("Job " + name + " has no extraction xpaths");
+        }
+        if (maxMatches <= 0) {
+            throw new IllegalArgumentException("Max matches of job " + name + " has to be a positive integer");
+        }
+        if (maxBodyChars <= 0) {
+            throw new IllegalArgumentException("Max body size of job " + name + " has to be a positive integer");
+        }
+        if (StringUtils.isBlank(storagePath)) {
+            throw new IllegalArgumentException("Storage path of job " + name + " may not be blank");
+        }
+        if (politenessIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Politeness interval has to be a positive integer");
+        }
+
+        this.name = name;
+        this.site = site;
+        this.seeds = Collections.unmodifiableList(new ArrayList<String>(seeds));
+        this.linkXPaths = Collections.unmodifiableList(new ArrayList<String>(linkXPaths));
+        this.xpathMap = Collections.unmodifiableMap(new LinkedHashMap<String, String>(xpathMap));
+        this.maxMatches = maxMatches;
+        this.maxBodyChars = maxBodyChars;
+        this.storagePath = storagePath;
+        this.urlsStoragePath = urlsStoragePath;
+        this.politenessIntervalMillis = politenessIntervalMillis;
+        this.preprocessKeys = Collections.unmodifiableList(new ArrayList<String>(preprocessKeys));
+        this.stopWordsPath = stopWordsPath;
+    }
+
+    /**
+     * Loads all jobs listed in the {@code jobs} property.
+     *
+     * @param properties crawl configuration
+     * @return jobs in the listed order
+     */
+    public static List<CrawlJob> loadAll(final Properties properties) {
+        final var names = properties.getProperty("jobs");
+        if (StringUtils.isBlank(names)) {
+            throw new IllegalArgumentException("No jobs are configured");
+        }
+
+        final List<CrawlJob> jobs = new ArrayList<CrawlJob>();
+        for (String name : names.split(",")) {
+            jobs.add(load(properties, name.trim()));
+        }
+        return jobs;
+    }
+
+    private static CrawlJob load(final Properties properties, final String name) {
+        final var prefix = "job." + name + ".";
+        final var site = properties.getProperty(prefix + "site");
+        final var seeds = properties.getProperty(prefix + "seeds");
+        final var politeness = properties.getProperty(prefix + "politeness");
+        final var preprocess = properties.getProperty(prefix + "preprocess");
+        if (StringUtils.isBlank(politeness)) {
+            throw new IllegalArgumentException("Job " + name + " has no politeness interval");
+        }
+
+        return new CrawlJob(name, site,
+                StringUtils.isBlank(seeds) ? Collections.singletonList(site) : splitList(seeds),
+                new ArrayList<String>(subProperties(properties, prefix + "links.").values()),
+                subProperties(properties, prefix + "extract."),
+                parseInt(properties.getProperty(prefix + "maxMatches"), ExtractionPlan.UNLIMITED_MATCHES),
+                parseInt(properties.getProperty(prefix + "maxBodyChars"), ExtractionPlan.DEFAULT_MAX_BODY_CHARS),
+                properties.getProperty(prefix + "storage"),
+                properties.getProperty(prefix + "urls", DEFAULT_URLS_STORAGE_PATH),
+                Integer.parseInt(politeness.trim()),
+                StringUtils.isBlank(preprocess) ? Collections.<String>emptyList() : splitList(preprocess),
+                properties.getProperty(prefix + "stopwords"));
+    }
+
+    private static int parseInt(final String value, final int defaultValue) {
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static List<String> splitList(final String value) {
+        final List<String> list = new ArrayList<String>();
+        for (String item : Arrays.asList(value.split(","))) {
+            if (!item.isBlank()) {
+                list.add(item.trim());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Properties with the given prefix, sorted by the rest of their key.
+     */
+    private static Map<String, String> subProperties(final Properties properties, final String prefix) {
+        final Map<String, String> map = new TreeMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                map.put(key.substring(prefix.length()), properties.getProperty(key).trim());
+            }
+        }
+        return map;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    /**
+     * Host politeness applies to. Jobs of the same host share one politeness window.
+     *
+     * @return host of the site
+     */
+    public String getHost() {
+        return Links.hostOf(site);
+    }
+
+    public List<String> getSeeds() {
+        return seeds;
+    }
+
+    public List<String> getLinkXPaths() {
+        return linkXPaths;
+    }
+
+    public Map<String, String> getXpathMap() {
+        return xpathMap;
+    }
+
+    /**
+     * @return matching subtrees after which the extraction of an expression is finished
+     */
+    public int getMaxMatches() {
+        return maxMatches;
+    }
+
+    /**
+     * @return number of characters of a page body to read at most
+     */
+    public int getMaxBodyChars() {
+        return maxBodyChars;
+    }
+
+    /**
+     * Compiles the extraction expressions with the limits of the job.
+     *
+     * @return compiled plan
+     */
+    public ExtractionPlan compileExtractionPlan() {
+        return ExtractionPlan.compile(xpathMap, maxMatches, maxBodyChars);
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    public String getUrlsStoragePath() {
+        return urlsStoragePath;
+    }
+
+    public int getPolitenessIntervalMillis() {
+        return politenessIntervalMillis;
+    }
+
+    public List<String> getPreprocessKeys() {
+        return preprocessKeys;
+    }
+
+    /**
+     * @return path to the stop words file, null for the bundled ones
+     */
+    public String getStopWordsPath() {
+        return stopWordsPath;
+    }
+}
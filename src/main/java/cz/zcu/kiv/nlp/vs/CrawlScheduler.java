@@ -0,0 +1,412 @@
+package cz.zcu.kiv.nlp.vs;
+
+import cz.zcu.kiv.nlp.ir.CircuitBreaker;
+import cz.zcu.kiv.nlp.ir.FailureTracker;
+import cz.zcu.kiv.nlp.ir.FetchFailure;
+import cz.zcu.kiv.nlp.ir.HTMLDownloaderInterface;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs crawl jobs of many sites on a shared pool of workers.
+ * <p>
+ * Every worker owns one downloader, since the downloaders aren't thread safe. Tasks are queued per
+ * host and each host has at most one request in flight, followed by its politeness interval. A free
+ * worker always takes the host which has been waiting the longest, so the politeness interval of one
+ * site is filled with requests to the others.
+ * <p>
+ * Hosts whose {@link CircuitBreaker} is open aren't served until their next probe. Once a host is
+ * considered down, its tasks are skipped and recorded as failures until the next probe, which is
+ * sent with the first task queued after the open interval.
+ */
+public class CrawlScheduler {
+
+    private static final Logger log = Logger.getLogger(CrawlScheduler.class);
+
+    private final List<HTMLDownloaderInterface> downloaders = new ArrayList<HTMLDownloaderInterface>();
+    private final FailureTracker failureTracker;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, HostQueue> hosts = new LinkedHashMap<String, HostQueue>();
+    private int pending;
+    private boolean cancelled;
+
+    /**
+     * @param downloaderFactory creates a downloader for every worker, recording into the given tracker
+     * @param workers           number of workers
+     * @param failureTracker    tracker shared by all downloaders
+     */
+    public CrawlScheduler(final Function<FailureTracker, HTMLDownloaderInterface> downloaderFactory,
+            final int workers, final FailureTracker failureTracker) {
+        if (downloaderFactory == null) {
+            throw new IllegalArgumentException("Downloader factory may not be null");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers has to be a positive integer");
+        }
+        if (failureTracker == null) {
+            throw new IllegalArgumentException("Failure tracker may not be null");
+        }
+
+        this.failureTracker = failureTracker;
+        for (int i = 0; i < workers; i++) {
+            downloaders.add(downloaderFactory.apply(failureTracker));
+        }
+    }
+
+    /**
+     * Runs all crawlers and waits until they are finished. Outcomes of the previous runs are
+     * forgotten, so every run starts with closed breakers and reports only its own failures, and
+     * hosts take the politeness interval of the jobs of this run.
+     *
+     * @param crawlers crawlers of the jobs
+     */
+    public void run(final List<Crawler> crawlers) {
+        resetHosts();
+        for (Crawler crawler : crawlers) {
+            final var storedUrls = crawler.loadStoredUrls();
+            if (storedUrls.isPresent()) {
+                submitUrls(crawler, crawler.start(storedUrls.get()));
+            } else {
+                submitSeeds(crawler);
+            }
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(downloaders.size());
+        try {
+            final List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+            for (HTMLDownloaderInterface downloader : downloaders) {
+                workers.add(() -> {
+                    work(downloader);
+                    return null;
+                });
+            }
+            for (Future<Void> future : pool.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            log.error("Crawl was interrupted", e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // post processors may still be busy with the last pages, the workers never wait for them
+        for (Crawler crawler : crawlers) {
+            crawler.awaitFinished();
+        }
+        reportProblems(crawlers);
+        log.info("-----------------------------");
+    }
+
+    /**
+     * Cancels the running crawl and all later ones. Queued tasks are dropped and their urls are
+     * counted as processed, so the crawlers close their output files; tasks in flight are finished.
+     * {@link #run(List)} returns as soon as the workers are idle.
+     */
+    public void cancel() {
+        final List<Task> dropped = new ArrayList<Task>();
+        lock.lock();
+        try {
+            cancelled = true;
+            for (HostQueue host : hosts.values()) {
+                dropped.addAll(host.tasks);
+                pending -= host.tasks.size();
+                host.tasks.clear();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        log.info("Crawl cancelled, " + dropped.size() + " queued tasks dropped.");
+        for (Task task : dropped) {
+            cancel(task);
+        }
+    }
+
+    private void cancel(final Task task) {
+        try {
+            task.cancel.run();
+        } catch (RuntimeException e) {
+            log.error("Cancelling of a crawl task failed", e);
+        }
+    }
+
+    /**
+     * Quits the downloaders of all workers.
+     */
+    public void shutdown() {
+        for (HTMLDownloaderInterface downloader : downloaders) {
+            downloader.quit();
+        }
+    }
+
+    /**
+     * Drops hosts which are idle and past their politeness interval, the others only keep the time of
+     * their next request.
+     */
+    private void resetHosts() {
+        lock.lock();
+        try {
+            failureTracker.reset();
+            final long now = System.nanoTime();
+            for (var iterator = hosts.entrySet().iterator(); iterator.hasNext(); ) {
+                final var entry = iterator.next();
+                final HostQueue queue = entry.getValue();
+                if (!queue.busy && queue.tasks.isEmpty() && queue.nextAllowedNanos - now <= 0) {
+                    iterator.remove();
+                    continue;
+                }
+                queue.politenessNanos = 0;
+                queue.breaker = failureTracker.getBreaker(entry.getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues every seed of the crawler as its own task on the host of the job, so the seeds keep the
+     * politeness interval without blocking a worker. The job is started with the links of all seeds
+     * once the last seed is downloaded or skipped.
+     */
+    private void submitSeeds(final Crawler crawler) {
+        final var job = crawler.getJob();
+        final List<String> seeds = crawler.getSeeds();
+        if (seeds.isEmpty()) {
+            crawler.start(Collections.<String>emptySet());
+            return;
+        }
+
+        final Set<String> links = ConcurrentHashMap.newKeySet();
+        final AtomicInteger remaining = new AtomicInteger(seeds.size());
+        final Runnable seedDone = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                submitUrls(crawler, crawler.start(new HashSet<String>(links)));
+            }
+        };
+        for (String seed : seeds) {
+            submit(job, new Task(downloader -> {
+                try {
+                    links.addAll(crawler.crawlSeed(downloader, seed));
+                } finally {
+                    seedDone.run();
+                }
+            }, () -> {
+                failureTracker.recordSkipped(seed);
+                crawler.skipSeed(seed);
+                seedDone.run();
+            }, () -> {
+                // the job isn't started anymore, a seed in flight can't bring the count to zero
+                if (remaining.getAndSet(-1) > 0) {
+                    log.info("Job " + job.getName() + " cancelled.");
+                }
+            }));
+        }
+    }
+
+    private void submitUrls(final Crawler crawler, final Set<String> urls) {
+        final var job = crawler.getJob();
+        for (String url : urls) {
+            submit(job, new Task(worker -> crawler.processUrl(worker, url), () -> {
+                failureTracker.recordSkipped(crawler.getLink(url));
+                crawler.skipUrl(url);
+            }, () -> crawler.skipUrl(url)));
+        }
+    }
+
+    private void submit(final CrawlJob job, final Task task) {
+        if (!enqueue(job, task)) {
+            cancel(task);
+        }
+    }
+
+    /**
+     * @return false if the crawl is cancelled and the task wasn't queued
+     */
+    private boolean enqueue(final CrawlJob job, final Task task) {
+        lock.lock();
+        try {
+            if (cancelled) {
+                return false;
+            }
+            var queue = hosts.get(job.getHost());
+            if (queue == null) {
+                queue = new HostQueue(failureTracker.getBreaker(job.getHost()));
+                hosts.put(job.getHost(), queue);
+            }
+            queue.politenessNanos = Math.max(queue.politenessNanos,
+                    TimeUnit.MILLISECONDS.toNanos(job.getPolitenessIntervalMillis()));
+            queue.tasks.add(task);
+            pending++;
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work(final HTMLDownloaderInterface downloader) throws InterruptedException {
+        while (true) {
+            final HostQueue host = take();
+            if (host == null) {
+                return;
+            }
+
+            final boolean skip = host.skipping;
+            try {
+                if (skip) {
+                    host.current.skip.run();
+                } else {
+                    host.current.action.accept(downloader);
+                }
+            } catch (RuntimeException e) {
+                log.error("Crawl task failed", e);
+            } finally {
+                release(host, !skip);
+            }
+        }
+    }
+
+    /**
+     * Waits for a host which is idle and past both its politeness interval and its open breaker,
+     * or whose tasks are being skipped.
+     *
+     * @return host to serve, null if there is nothing left to do
+     */
+    private HostQueue take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending > 0) {
+                final long now = System.nanoTime();
+                HostQueue ready = null;
+                long wait = Long.MAX_VALUE;
+                for (HostQueue host : hosts.values()) {
+                    if (host.busy || host.tasks.isEmpty()) {
+                        continue;
+                    }
+                    final long blockedUntil = host.breaker.getBlockedUntil(now);
+                    // a host which is down is skipped right away, but still waits for its probe
+                    final long readyAt = host.breaker.isGivenUp() && blockedUntil - now > 0
+                            ? now
+                            : Math.max(host.nextAllowedNanos, blockedUntil);
+                    if (readyAt - now <= 0) {
+                        if (ready == null || host.nextAllowedNanos - ready.nextAllowedNanos < 0) {
+                            ready = host;
+                        }
+                    } else {
+                        wait = Math.min(wait, readyAt - now);
+                    }
+                }
+
+                if (ready != null) {
+                    ready.busy = true;
+                    ready.skipping = !ready.breaker.allowRequest(now);
+                    ready.current = ready.tasks.poll();
+                    return ready;
+                }
+                if (wait == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(wait);
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(final HostQueue host, final boolean requested) {
+        lock.lock();
+        try {
+            host.busy = false;
+            host.current = null;
+            if (requested) {
+                host.nextAllowedNanos = System.nanoTime() + host.politenessNanos;
+            }
+            pending--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands failures of this run over to the crawlers they belong to and logs the per-host summary.
+     */
+    private void reportProblems(final List<Crawler> crawlers) {
+        final List<FetchFailure> failures = failureTracker.drainFailures();
+        for (Crawler crawler : crawlers) {
+            final List<FetchFailure> owned = new ArrayList<FetchFailure>();
+            for (FetchFailure failure : failures) {
+                if (crawler.ownsLink(failure.getUrl())) {
+                    owned.add(failure);
+                }
+            }
+            crawler.reportFailures(owned);
+        }
+
+        for (String line : failureTracker.summary()) {
+            log.info(line);
+        }
+    }
+
+    /**
+     * Task of a crawl with its fallbacks for a host which is down and for a cancelled crawl.
+     */
+    private static final class Task {
+        final Consumer<HTMLDownloaderInterface> action;
+        final Runnable skip;
+        final Runnable cancel;
+
+        Task(final Consumer<HTMLDownloaderInterface> action, final Runnable skip, final Runnable cancel) {
+            this.action = action;
+            this.skip = skip;
+            this.cancel = cancel;
+        }
+    }
+
+    /**
+     * Tasks of a single host.
+     */
+    private static final class HostQueue {
+        final Queue<Task> tasks = new ArrayDeque<Task>();
+        CircuitBreaker breaker;
+        Task current;
+        boolean skipping;
+        long politenessNanos;
+        long nextAllowedNanos = System.nanoTime();
+        boolean busy;
+
+        HostQueue(final CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package cz.zcu.kiv.nlp.vs;
 
 import cz.zcu.kiv.nlp.Storage;
+import cz.zcu.kiv.nlp.ir.ExtractionPlan;
+import cz.zcu.kiv.nlp.ir.FetchFailure;
 import cz.zcu.kiv.nlp.ir.HTMLDownloaderInterface;
 import cz.zcu.kiv.nlp.ir.Utils;
 import cz.zcu.kiv.nlp.utils.Links;
@@ -8,57 +10,87 @@ import cz.zcu.kiv.nlp.utils.Links;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * CrawlerVSCOM class acts as a controller. You should only adapt this file to
- * serve your needs.
+ * CrawlerVSCOM class acts as a controller of a single {@link CrawlJob}. The pages
+ * are downloaded by the workers of a {@link CrawlScheduler}, which may be shared
+ * by multiple crawlers.
  * Created by Tigi on 31.10.2014.
  */
 public class Crawler {
+
+    private static final Logger log = Logger.getLogger(Crawler.class);
+
+    private final CrawlJob job;
+    private final Storage storage;
     /**
-     * Xpath expressions to extract and their descriptions.
+     * Compiled xpathMap of the job, only the matching subtrees of the pages are parsed.
      */
-    private final static Map<String, String> xpathMap = new HashMap<String, String>();
-
-    static {
-        xpathMap.put("allText", "//div[contains(@class, 'article')]/allText()");
-        xpathMap.put("html", "//div[contains(@class, 'article')]/html()");
-        xpathMap.put("tidyText", "//div[contains(@class, 'article')]/tidyText()");
-    }
+    private final ExtractionPlan extractionPlan;
+    /**
+     * Link xpaths of the job compiled into one plan, so every seed is downloaded once, null if there
+     * are none.
+     */
+    private final ExtractionPlan linkPlan;
+    private final List<PostProcessor> postProcessors;
 
-    private static String SITE = "https://www.hokej.cz";
+    private final Map<String, PrintStream> printStreamMap = new HashMap<String, PrintStream>();
+    private final AtomicInteger processed = new AtomicInteger();
+    /**
+     * Links downloaded or skipped by this crawler, failures of other links belong to other jobs.
+     */
+    private final Set<String> requestedLinks = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> urls = Collections.emptySet();
+    private volatile boolean finished;
 
-    private static String URLS_STORAGE_PATH = "_urls.txt";
+    public Crawler(final CrawlJob job, final Storage storage) {
+        this(job, storage, Collections.<PostProcessor>emptyList());
+    }
 
-    private static final Logger log = Logger.getLogger(Crawler.class);
+    public Crawler(final CrawlJob job, final Storage storage, final List<PostProcessor> postProcessors) {
+        this(job, storage, job.compileExtractionPlan(), postProcessors);
+    }
 
     /**
-     * Be polite and don't send requests too often.
-     * Waiting period between requests.
+     * @param job            crawl job
+     * @param storage        storage of the job
+     * @param extractionPlan compiled xpathMap of the job, may be reused by more crawls of the job
+     * @param postProcessors stages run on the extracted values
      */
-    private final int politenessIntervalMillis;
-    private final HTMLDownloaderInterface downloader;
-    private final Storage storage;
-
-    public Crawler(final HTMLDownloaderInterface downloader, final int politenessIntervalMillis,
-            final Storage storage) {
-        validateParams(downloader, politenessIntervalMillis, storage);
+    public Crawler(final CrawlJob job, final Storage storage, final ExtractionPlan extractionPlan,
+            final List<PostProcessor> postProcessors) {
+        validateParams(job, storage);
+        if (extractionPlan == null) {
+            throw new IllegalArgumentException("Extraction plan may not be null");
+        }
 
-        this.downloader = downloader;
-        this.politenessIntervalMillis = politenessIntervalMillis;
+        this.job = job;
         this.storage = storage;
+        this.extractionPlan = extractionPlan;
+        this.linkPlan = compileLinkPlan(job);
+        this.postProcessors = postProcessors != null
+                ? new ArrayList<PostProcessor>(postProcessors)
+                : new ArrayList<PostProcessor>();
     }
 
-    private void validateParams(final HTMLDownloaderInterface downloader, final int politenessIntervalMillis,
-            final Storage storage) {
-        if (downloader == null) {
-            throw new IllegalArgumentException("Downloader may not be null");
+    private static ExtractionPlan compileLinkPlan(final CrawlJob job) {
+        if (job.getLinkXPaths().isEmpty()) {
+            return null;
+        }
+        final Map<String, String> linkXPaths = new LinkedHashMap<String, String>();
+        for (String xPath : job.getLinkXPaths()) {
+            linkXPaths.put("links" + linkXPaths.size(), xPath);
         }
+        return ExtractionPlan.compile(linkXPaths);
+    }
 
-        if (politenessIntervalMillis <= 0) {
-            throw new IllegalArgumentException("Politeness interval has to be a positive integer");
+    private void validateParams(final CrawlJob job, final Storage storage) {
+        if (job == null) {
+            throw new IllegalArgumentException("Job may not be null");
         }
 
         if (storage == null) {
@@ -66,141 +98,237 @@ public class Crawler {
         }
     }
 
-    public void crawl() {
-        Map<String, Map<String, List<String>>> results = new HashMap<String, Map<String, List<String>>>();
-
-        for (String key : xpathMap.keySet()) {
-            Map<String, List<String>> map = new HashMap<String, List<String>>();
-            results.put(key, map);
-        }
-
-        final var urlsResult = loadUrls();
-        if (urlsResult.isEmpty()) {
-            log.error("Error while loading urls");
-            return;
-        }
-
-        final var urls = urlsResult.get();
-        storage.saveUrls(urls, URLS_STORAGE_PATH);
+    public CrawlJob getJob() {
+        return job;
+    }
 
-        final var printStreamMap = initiatePrintStreams(results);
+    /**
+     * @return number of urls processed so far
+     */
+    public int getProcessedCount() {
+        return processed.get();
+    }
 
-        int count = 0;
-        for (String url : urls) {
-            processUrl(url, count, urls.size(), results, printStreamMap);
-            count++;
+    /**
+     * @return number of urls of the job, 0 until the urls are loaded
+     */
+    public int getTotalCount() {
+        return urls.size();
+    }
 
-            waitForPolitenessDuration();
-        }
+    /**
+     * @return true once all urls were processed and the output files are closed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
 
-        closePrintStreams(results, printStreamMap);
+    /**
+     * Loads urls saved by the previous crawl of the job.
+     *
+     * @return stored urls, empty if the urls have to be crawled from the seeds
+     */
+    public Optional<Set<String>> loadStoredUrls() {
+        return storage.loadUrls(job.getUrlsStoragePath());
+    }
 
-        // Save links that failed in some way.
-        // Be sure to go through these and explain why the process failed on these
-        // links.
-        // Try to eliminate all failed links - they consume your time while crawling
-        // data.
-        reportProblems(downloader.getFailedLinks());
-        downloader.emptyFailedLinks();
-        log.info("-----------------------------");
+    /**
+     * Get seeds the urls of the job are crawled from.
+     *
+     * @return seeds, empty if the job has no link xpaths
+     */
+    public List<String> getSeeds() {
+        return linkPlan != null ? job.getSeeds() : Collections.<String>emptyList();
     }
 
-    private Optional<Set<String>> loadUrls() {
-        final var storedUrls = storage.loadUrls(URLS_STORAGE_PATH);
-        if (storedUrls.isPresent()) {
-            return storedUrls;
+    /**
+     * Downloads the seed once and extracts all link xpaths from it.
+     *
+     * @param downloader downloader of the calling worker
+     * @param seed       one of {@link #getSeeds()}
+     * @return links found on the seed
+     */
+    public List<String> crawlSeed(final HTMLDownloaderInterface downloader, final String seed) {
+        final List<String> links = new ArrayList<String>();
+        requestedLinks.add(seed);
+        for (List<String> values : downloader.processUrl(seed, linkPlan).values()) {
+            links.addAll(values);
         }
-
-        return Optional.of(crawlUrlsFromWebsite());
+        return links;
     }
 
-    private Set<String> crawlUrlsFromWebsite() {
-        final var mainArticleUrls = downloader.getLinks(SITE,
-                "//section[@class='h-posts-section']//div[@class='h-posts-box']//article/a[starts-with(@href, '/')]/@href")
-                .stream()
-                .collect(Collectors.toSet());
-
-        final var sideListArticleUrls = downloader.getLinks(SITE,
-                "//section[@class='h-posts-section']//ul[@class='h-posts-list']//li/h3/a[starts-with(@href, '/')]/@href")
-                .stream()
-                .collect(Collectors.toSet());
-
-        mainArticleUrls.addAll(sideListArticleUrls);
-        return mainArticleUrls;
+    /**
+     * Saves urls of the job and opens the output files.
+     *
+     * @param urls urls loaded from the storage or crawled from the seeds
+     * @return urls to process
+     */
+    public Set<String> start(final Set<String> urls) {
+        this.urls = urls;
+        storage.saveUrls(urls, job.getUrlsStoragePath());
+        initiatePrintStreams();
+        for (PostProcessor postProcessor : postProcessors) {
+            postProcessor.start(storage);
+        }
+        if (urls.isEmpty()) {
+            finish();
+        }
+        return urls;
     }
 
-    private Map<String, PrintStream> initiatePrintStreams(final Map<String, Map<String, List<String>>> results) {
-        Map<String, PrintStream> printStreamMap = new HashMap<String, PrintStream>();
-        for (String key : results.keySet()) {
+    private void initiatePrintStreams() {
+        for (String key : job.getXpathMap().keySet()) {
             File file = storage.createFile(Utils.SDF.format(System.currentTimeMillis()) + "_" + key + ".txt");
             PrintStream printStream = null;
             try {
-                printStream = new PrintStream(new FileOutputStream(file));
+                printStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)), false,
+                        StandardCharsets.UTF_8);
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             }
             printStreamMap.put(key, printStream);
         }
+    }
 
-        return printStreamMap;
+    private void closePrintStreams() {
+        for (PrintStream printStream : printStreamMap.values()) {
+            if (printStream != null) {
+                printStream.close();
+            }
+        }
     }
 
-    private void closePrintStreams(final Map<String, Map<String, List<String>>> results,
-            final Map<String, PrintStream> printStreamMap) {
-        for (String key : results.keySet()) {
-            PrintStream printStream = printStreamMap.get(key);
-            printStream.close();
+    /**
+     * Downloads the url and appends extracted values to the output files. The job is finished
+     * once all its urls were processed.
+     *
+     * @param downloader downloader of the calling worker
+     * @param url        url returned by {@link #start(Set)}
+     */
+    public void processUrl(final HTMLDownloaderInterface downloader, final String url) {
+        try {
+            final var link = getLink(url);
+            requestedLinks.add(link);
+            // Download and extract data according to xpathMap
+            Map<String, List<String>> products = downloader.processUrl(link, extractionPlan);
+            writeResults(url, products);
+            for (PostProcessor postProcessor : postProcessors) {
+                postProcessor.process(url, products);
+            }
+        } finally {
+            countProcessed();
         }
     }
 
-    private void processUrl(final String url, final int order, final int totalCount,
-            final Map<String, Map<String, List<String>>> results,
-            final Map<String, PrintStream> printStreamMap) {
-        final var link = Links.prependBaseUrlIfNeeded(url, SITE);
-        // Download and extract data according to xpathMap
-        Map<String, List<String>> products = downloader.processUrl(link, xpathMap);
+    /**
+     * Counts the url as processed without downloading it, e.g. because its host is down or the
+     * crawl was cancelled.
+     *
+     * @param url url returned by {@link #start(Set)}
+     */
+    public void skipUrl(final String url) {
+        requestedLinks.add(getLink(url));
+        countProcessed();
+    }
+
+    /**
+     * Notes the seed which wasn't downloaded because its host is down.
+     *
+     * @param seed seed of the job
+     */
+    public void skipSeed(final String seed) {
+        requestedLinks.add(seed);
+    }
+
+    /**
+     * @param url url returned by {@link #start(Set)}
+     * @return absolute link of the url
+     */
+    public String getLink(final String url) {
+        return Links.prependBaseUrlIfNeeded(url, job.getSite());
+    }
+
+    private void countProcessed() {
+        final int order = processed.incrementAndGet();
         if (order % 100 == 0) {
-            log.info(order + " / " + totalCount + " = " + order / ((float) totalCount) + "% done.");
+            log.info(job.getName() + ": " + order + " / " + urls.size() + " = "
+                    + order / ((float) urls.size()) + "% done.");
         }
-        for (String key : results.keySet()) {
-            Map<String, List<String>> map = results.get(key);
+        if (order == urls.size()) {
+            finish();
+        }
+    }
+
+    private synchronized void writeResults(final String url, final Map<String, List<String>> products) {
+        for (String key : printStreamMap.keySet()) {
             List<String> list = products.get(key);
             if (list == null) {
                 continue;
             }
 
-            map.put(url, list);
             log.info(Arrays.toString(list.toArray()));
             // print
             PrintStream printStream = printStreamMap.get(key);
             for (String result : list) {
-                printStream.println(url + "\t" + result);
+                printStream.print(url);
+                printStream.print('\t');
+                printStream.println(result);
             }
         }
     }
 
-    private void waitForPolitenessDuration() {
-        try {
-            Thread.sleep(politenessIntervalMillis);
-        } catch (InterruptedException e) {
-            log.error("Error while performing sleep", e);
+    private synchronized void finish() {
+        for (PostProcessor postProcessor : postProcessors) {
+            postProcessor.finish();
         }
+        closePrintStreams();
+        finished = true;
+        log.info("Job " + job.getName() + " finished, " + urls.size() + " urls processed.");
     }
 
     /**
-     * Save file with failed links for later examination.
+     * Waits until the post processors are done with the pages of the job. Returns right away if the
+     * job wasn't finished, e.g. because it was cancelled before its urls were loaded.
+     */
+    public void awaitFinished() {
+        if (!finished) {
+            return;
+        }
+        for (PostProcessor postProcessor : postProcessors) {
+            postProcessor.awaitFinished();
+        }
+    }
+
+    /**
+     * Tells whether the failed link belongs to this job. A link requested by more jobs belongs to
+     * each of them.
      *
-     * @param failedLinks links that couldn't be downloaded, extracted etc.
+     * @param link failed link
+     * @return true if the link was downloaded or skipped by this crawler
      */
-    private void reportProblems(Set<String> failedLinks) {
-        if (failedLinks.isEmpty()) {
+    public boolean ownsLink(final String link) {
+        return requestedLinks.contains(link);
+    }
+
+    /**
+     * Save file with failed links, their status, latency and cause for later examination.
+     * Be sure to go through these and explain why the process failed on these links.
+     * Try to eliminate all failed links - they consume your time while crawling data.
+     *
+     * @param failures links that couldn't be downloaded
+     */
+    public void reportFailures(final List<FetchFailure> failures) {
+        if (failures.isEmpty()) {
             return;
         }
 
-        storage.saveUrls(failedLinks,
-                Utils.SDF.format(System.currentTimeMillis()) + "_failed_links_size_"
-                        + failedLinks.size() + ".txt");
-        log.info("Failed links: " + failedLinks.size());
+        final List<String> lines = new ArrayList<String>();
+        for (FetchFailure failure : failures) {
+            lines.add(failure.toString());
+        }
+        Utils.saveFile(storage.createFile(Utils.SDF.format(System.currentTimeMillis()) + "_failed_links_size_"
+                + failures.size() + ".txt"), lines);
+        log.info("Failed links of job " + job.getName() + ": " + failures.size());
     }
 
 }
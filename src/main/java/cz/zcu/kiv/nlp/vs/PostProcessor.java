@@ -0,0 +1,41 @@
+package cz.zcu.kiv.nlp.vs;
+
+import cz.zcu.kiv.nlp.Storage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stage of the crawl pipeline run on the values extracted from every page.
+ * Implementations are called from the crawl workers and should hand heavy work
+ * over to their own threads, so that the workers are free for downloading.
+ */
+public interface PostProcessor {
+
+    /**
+     * Called once before the first page of the job.
+     *
+     * @param storage storage of the job
+     */
+    void start(Storage storage);
+
+    /**
+     * Processes values extracted from a page.
+     *
+     * @param url      page url
+     * @param products pairs of descriptions and extracted values
+     */
+    void process(String url, Map<String, List<String>> products);
+
+    /**
+     * Called once after the last page of the job, from a crawl worker, so it must not wait for
+     * the pages still being processed.
+     */
+    void finish();
+
+    /**
+     * Waits until all pages are processed and the output is closed. Called after
+     * {@link #finish()}, once the crawl workers are done.
+     */
+    void awaitFinished();
+}
@@ -0,0 +1,165 @@
+package cz.zcu.kiv.nlp;
+
+import cz.zcu.kiv.nlp.ir.AbstractHTMLDownloader;
+import cz.zcu.kiv.nlp.ir.ExtractionPlan;
+import cz.zcu.kiv.nlp.ir.FailureTracker;
+import cz.zcu.kiv.nlp.vs.CrawlScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the daemon refuses jobs writing outside of its root and requests it can't trust.
+ */
+public class CrawlDaemonTest {
+
+  private static final String CRAWL = "jobs=a\n"
+      + "job.a.site=http://a.test\n"
+      + "job.a.extract.title=//h1/text()\n"
+      + "job.a.politeness=100\n";
+
+  @Test
+  public void refusesStorageOutsideOfRoot() throws Exception {
+    withDaemon((daemon, root) -> {
+      assertRefused(daemon, crawl(root.resolve("../outside").toString(), null, null));
+      assertRefused(daemon, crawl("../outside", null, null));
+      assertRefused(daemon, crawl(root.getParent().resolve("outside").toString(), null, null));
+    });
+  }
+
+  @Test
+  public void refusesUrlsEscapingStorage() throws Exception {
+    withDaemon((daemon, root) ->
+        assertRefused(daemon, crawl(root.resolve("a").toString(), "/../../urls.txt", null)));
+  }
+
+  @Test
+  public void refusesStopWordsOutsideOfRoot() throws Exception {
+    withDaemon((daemon, root) -> {
+      String storage = root.resolve("a").toString();
+      assertRefused(daemon, crawl(storage, null, root.resolve("../stopwords.txt").toString()));
+      assertRefused(daemon, crawl(storage, null, File.separator + "stopwords.txt"));
+    });
+  }
+
+  @Test
+  public void refusesCrawlsAfterShutdown() throws Exception {
+    withDaemon((daemon, root) -> {
+      daemon.shutdown();
+      Properties crawl = crawl(root.resolve("a").toString(), null, null);
+      assertThrows(IllegalStateException.class, () -> daemon.submit(crawl));
+    });
+  }
+
+  @Test
+  public void refusesRequestsFromWebPages() throws Exception {
+    withDaemon((daemon, root) -> {
+      HttpRequest request = post(daemon, "text/x-java-properties")
+          .header("Origin", "http://evil.test")
+          .build();
+      assertEquals(403, send(request).statusCode());
+
+      HttpRequest shutdown = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + daemon.getPort() + "/shutdown"))
+          .header("Origin", "http://evil.test")
+          .POST(HttpRequest.BodyPublishers.noBody())
+          .build();
+      assertEquals(403, send(shutdown).statusCode());
+    });
+  }
+
+  @Test
+  public void refusesOtherContentTypes() throws Exception {
+    withDaemon((daemon, root) -> {
+      assertEquals(415, send(post(daemon, "application/x-www-form-urlencoded").build()).statusCode());
+      assertEquals(415, send(post(daemon, "text/plain").build()).statusCode());
+
+      HttpResponse<String> response = send(post(daemon, "text/x-java-properties; charset=utf-8").build());
+      assertEquals(400, response.statusCode());
+      assertTrue(response.body().contains("outside"), response.body());
+    });
+  }
+
+  private static void assertRefused(CrawlDaemon daemon, Properties crawl) {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> daemon.submit(crawl));
+    assertTrue(e.getMessage().contains("outside"), e.getMessage());
+  }
+
+  private static Properties crawl(String storage, String urls, String stopWords) throws IOException {
+    Properties crawl = new Properties();
+    crawl.load(new StringReader(CRAWL));
+    crawl.setProperty("job.a.storage", storage);
+    if (urls != null) {
+      crawl.setProperty("job.a.urls", urls);
+    }
+    if (stopWords != null) {
+      crawl.setProperty("job.a.stopwords", stopWords);
+    }
+    return crawl;
+  }
+
+  /**
+   * Request posting a crawl whose storage lies outside of the root, so it is never run.
+   */
+  private static HttpRequest.Builder post(CrawlDaemon daemon, String contentType) {
+    return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + daemon.getPort() + "/crawls"))
+        .header("Content-Type", contentType)
+        .POST(HttpRequest.BodyPublishers.ofString(CRAWL + "job.a.storage=/\n"));
+  }
+
+  private static HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+    return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static void withDaemon(DaemonTest test) throws Exception {
+    Path root = Files.createTempDirectory("crawl-daemon");
+    CrawlScheduler scheduler = new CrawlScheduler(IdleDownloader::new, 1, new FailureTracker());
+    CrawlDaemon daemon = new CrawlDaemon(scheduler, new ForkJoinPool(1), 0, root);
+    daemon.start();
+    try {
+      test.run(daemon, root);
+    } finally {
+      daemon.shutdown();
+      Files.delete(root);
+    }
+  }
+
+  private interface DaemonTest {
+    void run(CrawlDaemon daemon, Path root) throws Exception;
+  }
+
+  /**
+   * Downloader of the workers, the tests never start a crawl.
+   */
+  private static final class IdleDownloader extends AbstractHTMLDownloader {
+
+    IdleDownloader(FailureTracker failureTracker) {
+      super(failureTracker);
+    }
+
+    @Override
+    public Map<String, List<String>> processUrl(String url, ExtractionPlan plan) {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public void quit() {
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package cz.zcu.kiv.nlp.ir;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 1000;
+    private static final long OPEN_NANOS = OPEN_MILLIS * 1000000L;
+
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 0.5, OPEN_MILLIS, 2);
+
+    @Test
+    public void staysClosedUntilTheWindowIsFull() {
+        breaker.recordFailure(0);
+        breaker.recordFailure(0);
+        breaker.recordFailure(0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(0));
+    }
+
+    @Test
+    public void staysClosedBelowTheFailureRate() {
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure(0);
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensAtTheFailureRate() {
+        breaker.recordSuccess();
+        breaker.recordFailure(0);
+        breaker.recordSuccess();
+        breaker.recordFailure(0);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(OPEN_NANOS - 1));
+        assertEquals(OPEN_NANOS, breaker.getBlockedUntil(0));
+        assertFalse(breaker.isGivenUp());
+    }
+
+    @Test
+    public void successfulProbeCloses() {
+        open(0);
+
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // the window starts over, a single failure doesn't open the breaker again
+        breaker.recordFailure(OPEN_NANOS);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeReopens() {
+        open(0);
+
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+        breaker.recordFailure(OPEN_NANOS);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2 * OPEN_NANOS, breaker.getBlockedUntil(OPEN_NANOS));
+        assertFalse(breaker.isGivenUp());
+    }
+
+    @Test
+    public void givesUpAfterMaxFailedProbes() {
+        open(0);
+        failProbe(OPEN_NANOS);
+        failProbe(2 * OPEN_NANOS);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isGivenUp());
+        assertFalse(breaker.allowRequest(3 * OPEN_NANOS - 1));
+    }
+
+    @Test
+    public void givenUpHostIsProbedAgain() {
+        open(0);
+        failProbe(OPEN_NANOS);
+        failProbe(2 * OPEN_NANOS);
+
+        assertTrue(breaker.allowRequest(3 * OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.isGivenUp());
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(breaker.isGivenUp());
+    }
+
+    @Test
+    public void failuresWhileOpenAreIgnored() {
+        open(0);
+        breaker.recordFailure(OPEN_NANOS / 2);
+
+        assertEquals(OPEN_NANOS, breaker.getBlockedUntil(OPEN_NANOS / 2));
+    }
+
+    private void open(long now) {
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure(now);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void failProbe(long now) {
+        assertTrue(breaker.allowRequest(now));
+        breaker.recordFailure(now);
+    }
+}
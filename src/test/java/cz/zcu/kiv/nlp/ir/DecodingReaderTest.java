@@ -0,0 +1,164 @@
+package cz.zcu.kiv.nlp.ir;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DecodingReaderTest {
+
+    private static final Charset WINDOWS_1250 = Charset.forName("windows-1250");
+    private static final String TEXT = "P\u0159\u00edli\u0161 \u017elu\u0165ou\u010dk\u00fd k\u016f\u0148";
+
+    @Test
+    public void usesDeclaredCharset() throws IOException {
+        assertDecoded(WINDOWS_1250, TEXT, TEXT.getBytes(WINDOWS_1250), WINDOWS_1250);
+    }
+
+    @Test
+    public void detectsMetaCharset() throws IOException {
+        String page = "<html><head><meta charset=\"windows-1250\"></head><body>" + TEXT + "</body></html>";
+        assertDecoded(WINDOWS_1250, page, page.getBytes(WINDOWS_1250), null);
+    }
+
+    @Test
+    public void detectsHttpEquivCharset() throws IOException {
+        String page = "<html><head><META HTTP-EQUIV='Content-Type' CONTENT='text/html; charset=ISO-8859-2'>"
+                + "</head><body>" + TEXT + "</body></html>";
+        Charset latin2 = Charset.forName("ISO-8859-2");
+        assertDecoded(latin2, page, page.getBytes(latin2), null);
+    }
+
+    @Test
+    public void fallsBackToUtf8() throws IOException {
+        String page = "<html><head><meta charset='no-such-charset'></head><body>" + TEXT + "</body></html>";
+        assertDecoded(StandardCharsets.UTF_8, page, page.getBytes(StandardCharsets.UTF_8), null);
+        assertDecoded(StandardCharsets.UTF_8, "", new byte[0], null);
+    }
+
+    @Test
+    public void byteOrderMarkWinsOverDeclaredCharset() throws IOException {
+        byte[] bytes = withByteOrderMark(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+                TEXT.getBytes(StandardCharsets.UTF_8));
+        assertDecoded(StandardCharsets.UTF_8, TEXT, bytes, WINDOWS_1250);
+    }
+
+    @Test
+    public void stripsUtf16ByteOrderMarks() throws IOException {
+        assertDecoded(StandardCharsets.UTF_16BE, TEXT, withByteOrderMark(new byte[]{(byte) 0xFE, (byte) 0xFF},
+                TEXT.getBytes(StandardCharsets.UTF_16BE)), null);
+        assertDecoded(StandardCharsets.UTF_16LE, TEXT, withByteOrderMark(new byte[]{(byte) 0xFF, (byte) 0xFE},
+                TEXT.getBytes(StandardCharsets.UTF_16LE)), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void decodesCharactersSplitAcrossBuffers() throws IOException {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            page.append(TEXT).append(' ');
+        }
+        byte[] bytes = page.toString().getBytes(StandardCharsets.UTF_8);
+
+        // odd buffer size, so the two byte characters keep crossing the buffer boundary
+        ByteBufferPool pool = new ByteBufferPool(CharsetDetector.PRESCAN_BYTES + 1, 1);
+        assertEquals(page.toString(), read(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, pool));
+        assertEquals(page.toString(), read(new TrickleInputStream(bytes), StandardCharsets.UTF_8, pool));
+    }
+
+    @Test
+    @Timeout(10)
+    public void readsSupplementaryCharactersOneByOne() throws IOException {
+        String text = "a\ud83d\ude00b" + repeat("b", 500) + "\ud83d\ude00";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        for (int bufferSize : new int[]{64, CharsetDetector.PRESCAN_BYTES}) {
+            ByteBufferPool pool = new ByteBufferPool(bufferSize, 1);
+            try (DecodingReader reader = DecodingReader.open(new ByteArrayInputStream(bytes),
+                    StandardCharsets.UTF_8, pool)) {
+                StringBuilder decoded = new StringBuilder();
+                int c;
+                while ((c = reader.read()) != -1) {
+                    decoded.append((char) c);
+                }
+                assertEquals(text, decoded.toString());
+            }
+        }
+    }
+
+    @Test
+    public void returnsBufferToPool() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(CharsetDetector.PRESCAN_BYTES, 1);
+        ByteBuffer buffer = pool.acquire();
+        pool.release(buffer);
+
+        DecodingReader reader = DecodingReader.open(new ByteArrayInputStream(new byte[0]), null, pool);
+        assertNotSame(buffer, pool.acquire());
+        reader.close();
+        reader.close();
+        assertSame(buffer, pool.acquire());
+    }
+
+    private static void assertDecoded(Charset charset, String expected, byte[] bytes, Charset declared)
+            throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(4096, 1);
+        try (DecodingReader reader = DecodingReader.open(new ByteArrayInputStream(bytes), declared, pool)) {
+            assertEquals(charset, reader.getCharset());
+            assertEquals(expected, readAll(reader));
+        }
+    }
+
+    private static String read(InputStream in, Charset declared, ByteBufferPool pool) throws IOException {
+        try (DecodingReader reader = DecodingReader.open(in, declared, pool)) {
+            return readAll(reader);
+        }
+    }
+
+    private static String readAll(DecodingReader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] chars = new char[7];
+        int count;
+        while ((count = reader.read(chars, 0, chars.length)) != -1) {
+            text.append(chars, 0, count);
+        }
+        return text.toString();
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+
+    private static byte[] withByteOrderMark(byte[] mark, byte[] bytes) {
+        byte[] result = new byte[mark.length + bytes.length];
+        System.arraycopy(mark, 0, result, 0, mark.length);
+        System.arraycopy(bytes, 0, result, mark.length, bytes.length);
+        return result;
+    }
+
+    /**
+     * Stream returning a few bytes per read, like a slow connection.
+     */
+    private static final class TrickleInputStream extends ByteArrayInputStream {
+
+        TrickleInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 3));
+        }
+    }
+}
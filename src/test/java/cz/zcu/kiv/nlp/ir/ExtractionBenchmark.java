@@ -0,0 +1,111 @@
+package cz.zcu.kiv.nlp.ir;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import us.codecraft.xsoup.Xsoup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares full {@code Jsoup.parse} + {@code Xsoup} extraction with {@link StreamingExtractor}.
+ * <p>
+ * Run with a saved page as the only argument, otherwise a synthetic article page is used.
+ * Prints time and allocated bytes per page for both approaches.
+ */
+public class ExtractionBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        String html = args.length > 0
+                ? new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8)
+                : syntheticPage();
+
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("allText", "//div[contains(@class, 'article')]/allText()");
+        xpathMap.put("html", "//div[contains(@class, 'article')]/html()");
+        xpathMap.put("tidyText", "//div[contains(@class, 'article')]/tidyText()");
+
+        ExtractionPlan plan = ExtractionPlan.compile(xpathMap);
+        StreamingExtractor extractor = new StreamingExtractor();
+
+        if (!fullParse(html, xpathMap).equals(extractor.extract(new StringReader(html), plan))) {
+            System.out.println("WARNING: results of the extractors differ");
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            fullParse(html, xpathMap);
+            extractor.extract(new StringReader(html), plan);
+        }
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            fullParse(html, xpathMap);
+        }
+        report("Jsoup.parse + Xsoup", start, allocated);
+
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            extractor.extract(new StringReader(html), plan);
+        }
+        report("StreamingExtractor", start, allocated);
+    }
+
+    private static Map<String, List<String>> fullParse(String html, Map<String, String> xpathMap) {
+        Map<String, List<String>> results = new HashMap<String, List<String>>();
+        Document document = Jsoup.parse(html);
+        for (String key : xpathMap.keySet()) {
+            results.put(key, new ArrayList<String>(Xsoup.compile(xpathMap.get(key)).evaluate(document).list()));
+        }
+        return results;
+    }
+
+    private static void report(String name, long start, long allocated) {
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes() - allocated;
+        System.out.printf("%-22s %8.1f us/page %10d B/page%n", name, nanos / 1000.0 / ITERATIONS,
+                bytes / ITERATIONS);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String syntheticPage() {
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>Zapas</title>");
+        for (int i = 0; i < 20; i++) {
+            html.append("<script>var x").append(i).append(" = '<div>';</script><link rel='stylesheet' href='/s")
+                    .append(i).append(".css'>");
+        }
+        html.append("</head><body><header><nav><ul>");
+        for (int i = 0; i < 200; i++) {
+            html.append("<li class='menu-item'><a href='/clanek/").append(i).append("'>Odkaz ").append(i)
+                    .append("</a></li>");
+        }
+        html.append("</ul></nav></header><main><div class='article-detail'><h1>Titulek</h1>");
+        for (int i = 0; i < 30; i++) {
+            html.append("<p>Odstavec ").append(i).append(" clanku o hokeji, <b>tucne</b> a <i>kurzivou</i>.</p>");
+        }
+        html.append("</div><aside>");
+        for (int i = 0; i < 300; i++) {
+            html.append("<div class='box'><span class='date'>1.1.2023</span><a href='/jiny/").append(i)
+                    .append("'>Souvisejici ").append(i).append("</a></div>");
+        }
+        html.append("</aside></main><footer><p>Paticka</p></footer></body></html>");
+        return html.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package cz.zcu.kiv.nlp.ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FailureTrackerTest {
+
+    private static final String HOST = "www.example.com";
+    private static final String URL = "https://" + HOST + "/page";
+
+    private final FailureTracker tracker = new FailureTracker(4, 0.5, 60000, 2);
+
+    @Test
+    public void clientErrorsDontOpenTheBreaker() {
+        for (int i = 0; i < 10; i++) {
+            tracker.recordFailure(URL, 404, "unexpected status", 10);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, tracker.getBreaker(HOST).getState());
+        assertEquals(10, tracker.drainFailures().size());
+    }
+
+    @Test
+    public void serverErrorsOpenTheBreaker() {
+        for (int i = 0; i < 4; i++) {
+            tracker.recordFailure(URL, 503, "unexpected status", 10);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, tracker.getBreaker(HOST).getState());
+    }
+
+    @Test
+    public void throttlingAndTransportErrorsOpenTheBreaker() {
+        tracker.recordFailure(URL, 429, "unexpected status", 10);
+        tracker.recordFailure(URL, new IOException("Connection reset"), 10);
+        tracker.recordFailure(URL, new IOException("Read timed out"), 10);
+        tracker.recordFailure(URL, FetchFailure.NO_STATUS, "empty page source", 10);
+
+        assertEquals(CircuitBreaker.State.OPEN, tracker.getBreaker(HOST).getState());
+    }
+
+    @Test
+    public void interruptionDoesntOpenTheBreaker() {
+        for (int i = 0; i < 4; i++) {
+            tracker.recordFailure(URL, new InterruptedException(), 10);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, tracker.getBreaker(HOST).getState());
+    }
+
+    @Test
+    public void summaryListsFailedHosts() {
+        tracker.recordSuccess("https://ok.example.com/", 10);
+        tracker.recordSuccess(URL, 10);
+        tracker.recordFailure(URL, 404, "unexpected status", 30);
+        tracker.recordSkipped(URL);
+
+        List<String> summary = tracker.summary();
+        assertEquals(1, summary.size());
+        assertTrue(summary.get(0).startsWith(HOST + ": 1 failed of 2 requests"));
+        assertTrue(summary.get(0).contains("1 skipped"));
+        assertTrue(summary.get(0).contains("HTTP 404=1"));
+    }
+
+    @Test
+    public void resetForgetsOutcomes() {
+        for (int i = 0; i < 4; i++) {
+            tracker.recordFailure(URL, 500, "unexpected status", 10);
+        }
+        tracker.reset();
+
+        assertEquals(CircuitBreaker.State.CLOSED, tracker.getBreaker(HOST).getState());
+        assertTrue(tracker.drainFailures().isEmpty());
+        assertTrue(tracker.summary().isEmpty());
+    }
+
+    @Test
+    public void hostFailureStatuses() {
+        assertTrue(FailureTracker.isHostFailure(FetchFailure.NO_STATUS));
+        assertTrue(FailureTracker.isHostFailure(500));
+        assertTrue(FailureTracker.isHostFailure(429));
+        assertFalse(FailureTracker.isHostFailure(403));
+        assertFalse(FailureTracker.isHostFailure(404));
+        assertFalse(FailureTracker.isHostFailure(410));
+    }
+}
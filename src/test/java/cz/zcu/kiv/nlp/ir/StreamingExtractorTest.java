@@ -0,0 +1,186 @@
+package cz.zcu.kiv.nlp.ir;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import us.codecraft.xsoup.Xsoup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link StreamingExtractor} extracts the same values as {@code Jsoup.parse} + {@code Xsoup}.
+ */
+public class StreamingExtractorTest {
+
+    private static final String ARTICLE_TEXT = "//div[contains(@class, 'article')]/allText()";
+    private static final String ARTICLE_HTML = "//div[contains(@class, 'article')]/html()";
+
+    private final StreamingExtractor extractor = new StreamingExtractor();
+
+    @Test
+    public void commentsContainingTags() throws IOException {
+        assertSameAsFullParse("<html><body><!-- <div class='article'>hidden</div> -->"
+                + "<div class='article'><p>one</p><!-- </div><div> --><p>two</p></div>"
+                + "<!--<div class='article'>--><p>after</p></body></html>");
+    }
+
+    @Test
+    public void scriptContainingTags() throws IOException {
+        assertSameAsFullParse("<html><head><script>var a = '<div class=\"article\">';</script></head><body>"
+                + "<div class='article'><script>document.write('</div><div>');</script><p>text</p></div>"
+                + "<style>div > p { color: red; }</style><p>after</p></body></html>");
+    }
+
+    @Test
+    public void textareaContainingTags() throws IOException {
+        assertSameAsFullParse("<html><body><div class='article'>"
+                + "<textarea name='comment'></div><div class='article'>not markup</textarea><p>text</p></div>"
+                + "</body></html>");
+    }
+
+    @Test
+    public void quotedGreaterThanInAttributes() throws IOException {
+        assertSameAsFullParse("<html><body><div data-rule='a > b' class='article'>"
+                + "<a title=\"x > y\" href='/1'>link</a><img alt='<div>' src='/i.png'> text</div></body></html>");
+    }
+
+    @Test
+    public void nestedMatchesOfTheSameStep() throws IOException {
+        assertSameAsFullParse("<html><body><div class='article'>outer <div class='article inner'>inner</div>"
+                + " tail</div><div class='article'>second</div></body></html>");
+    }
+
+    @Test
+    public void upperCaseTags() throws IOException {
+        assertSameAsFullParse("<HTML><BODY><DIV CLASS='article'><P>one</P><BR><Div class='x'>two</DIV></DIV>"
+                + "<div class='article'>three</Div></BODY></HTML>");
+    }
+
+    @Test
+    public void attributeValuesIgnoreCaseAndPadding() throws IOException {
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("contains", ARTICLE_TEXT);
+        xpathMap.put("equals", "//section[@class=' h-posts-section']/allText()");
+        xpathMap.put("startsWith", "//p[starts-with(@data-kind, 'Lead')]/text()");
+        assertSameAsFullParse("<html><body><div class=' Article-Detail '>mixed case</div>"
+                + "<div class='ARTICLE'>upper case</div><section class='H-Posts-Section '>padded</section>"
+                + "<section class='h-posts-section-old'>other</section><p data-kind='LEAD paragraph'>lead</p>"
+                + "</body></html>", xpathMap);
+    }
+
+    @Test
+    public void sharedLeadingStepAndAttributes() throws IOException {
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("text", ARTICLE_TEXT);
+        xpathMap.put("html", ARTICLE_HTML);
+        xpathMap.put("links", "//div[@class='list']//a/@href");
+        assertSameAsFullParse("<html><body><div class='list'><ul><li><a href='/1'>1</a></li>"
+                + "<li><a href='/2'>2</a></li></ul></div><div class='article'><a href='/3'>3</a></div>"
+                + "</body></html>", xpathMap);
+    }
+
+    @Test
+    public void truncatesAtBodyCap() throws IOException {
+        String head = "<html><body><div class='article'>first</div><div class='article'>sec";
+        String html = head + "ond</div>" + repeat("<p>filler</p>", 1000) + "</body></html>";
+        Map<String, String> xpathMap = singleXPath(ARTICLE_TEXT);
+
+        ExtractionPlan plan = ExtractionPlan.compile(xpathMap, ExtractionPlan.UNLIMITED_MATCHES, head.length());
+        assertEquals(fullParse(head, xpathMap), extractor.extract(new StringReader(html), plan));
+    }
+
+    @Test
+    public void stopsAfterMaxMatches() throws IOException {
+        String html = "<html><body><div class='article'>first</div><div class='article'>second</div>"
+                + "</body></html>";
+        ExtractionPlan plan = ExtractionPlan.compile(singleXPath(ARTICLE_TEXT), 1,
+                ExtractionPlan.DEFAULT_MAX_BODY_CHARS);
+
+        Map<String, List<String>> results = extractor.extract(new StringReader(html), plan);
+        assertEquals(Arrays.asList("first"), results.get("value"));
+    }
+
+    @Test
+    public void fallsBackToFullParse() throws IOException {
+        String html = "<html><body><table><tr><td class='article'>cell</td></tr></table>"
+                + "<div class='article'>text</div></body></html>";
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("cell", "//td[@class='article']/text()");
+        xpathMap.put("text", ARTICLE_TEXT);
+
+        assertFalse(ExtractionPlan.compile(xpathMap).isStreamable());
+        assertSameAsFullParse(html, xpathMap);
+    }
+
+    @Test
+    public void compoundPredicatesFallBackToFullParse() throws IOException {
+        String html = "<html><body><div class='a' id='b'>both</div><div class='a'>class only</div>"
+                + "<div class='article main'>article</div></body></html>";
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("equals", "//div[@class='a' and @id='b']/text()");
+        xpathMap.put("contains", "//div[contains(@class, 'article') and contains(@class, \"main\")]/text()");
+
+        assertFalse(ExtractionPlan.compile(singleXPath(xpathMap.get("equals"))).isStreamable());
+        assertFalse(ExtractionPlan.compile(singleXPath(xpathMap.get("contains"))).isStreamable());
+        assertFalse(ExtractionPlan.compile(singleXPath("//div[@class='a' or @id='b']/text()")).isStreamable());
+        assertSameAsFullParse(html, xpathMap);
+    }
+
+    @Test
+    public void streamsSimpleLeadingSteps() {
+        assertTrue(ExtractionPlan.compile(singleXPath(ARTICLE_TEXT)).isStreamable());
+        assertTrue(ExtractionPlan.compile(singleXPath("//div[@class=\"it's\"]/text()")).isStreamable());
+        assertFalse(ExtractionPlan.compile(singleXPath("//body//p/text()")).isStreamable());
+    }
+
+    private void assertSameAsFullParse(String html) throws IOException {
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("text", ARTICLE_TEXT);
+        xpathMap.put("html", ARTICLE_HTML);
+        assertSameAsFullParse(html, xpathMap);
+    }
+
+    private void assertSameAsFullParse(String html, Map<String, String> xpathMap) throws IOException {
+        Map<String, List<String>> expected = fullParse(html, xpathMap);
+        for (List<String> values : expected.values()) {
+            assertFalse(values.isEmpty(), "Every expression has to match the page");
+        }
+
+        ExtractionPlan plan = ExtractionPlan.compile(xpathMap);
+        assertEquals(expected, extractor.extract(new StringReader(html), plan));
+    }
+
+    private static Map<String, List<String>> fullParse(String html, Map<String, String> xpathMap) {
+        Map<String, List<String>> results = new HashMap<String, List<String>>();
+        Document document = Jsoup.parse(html);
+        for (String key : xpathMap.keySet()) {
+            results.put(key, new ArrayList<String>(Xsoup.compile(xpathMap.get(key)).evaluate(document).list()));
+        }
+        return results;
+    }
+
+    private static Map<String, String> singleXPath(String xPath) {
+        Map<String, String> xpathMap = new LinkedHashMap<String, String>();
+        xpathMap.put("value", xPath);
+        return xpathMap;
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package cz.zcu.kiv.nlp.preprocess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that splitting a text between threads gives the same result as tokenizing it at once.
+ */
+public class TokenizeTaskTest {
+
+    private static final String[] WORDS = {"hokej", "Z\u00c1PAS", "t\u00fdm", "g\u00f3l", "a", "je", "2:1",
+            "\u010cesko", "\u0161ampion\u00e1t", "extraliga"};
+    private static final String[] SEPARATORS = {" ", ", ", ". ", "\n", " - "};
+
+    private final Tokenizer tokenizer = new Tokenizer(new HashSet<String>(Arrays.asList("a", "je")));
+
+    @Test
+    public void longTextGivesSameTokensAsSingleThread() {
+        char[] text = randomText(10 * TokenizeTask.SPLIT_THRESHOLD, new Random(42));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertSameAsSingleThread(text, pool.invoke(new TokenizeTask(tokenizer, text)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shortTextIsNotSplit() {
+        char[] text = randomText(TokenizeTask.SPLIT_THRESHOLD / 2, new Random(7));
+        assertSameAsSingleThread(text, ForkJoinPool.commonPool().invoke(new TokenizeTask(tokenizer, text)));
+    }
+
+    @Test
+    public void tokenLongerThanThresholdIsKeptWhole() {
+        char[] text = new char[3 * TokenizeTask.SPLIT_THRESHOLD];
+        Arrays.fill(text, 'x');
+        TokenizeTask.Result result = ForkJoinPool.commonPool().invoke(new TokenizeTask(tokenizer, text));
+
+        assertEquals(1, result.getTokens().size());
+        assertEquals(text.length, result.getTokens().get(0).length());
+    }
+
+    private void assertSameAsSingleThread(char[] text, TokenizeTask.Result result) {
+        List<String> tokens = new ArrayList<String>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        tokenizer.tokenize(text, 0, text.length, tokens, counts);
+
+        assertTrue(tokens.size() > 0);
+        assertEquals(tokens, result.getTokens());
+        assertEquals(counts, result.getCounts());
+    }
+
+    private static char[] randomText(int length, Random random) {
+        StringBuilder text = new StringBuilder(length + 32);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        return text.toString().toCharArray();
+    }
+}
@@ -0,0 +1,79 @@
+package cz.zcu.kiv.nlp.preprocess;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenizerTest {
+
+    // Czech pangram, every letter with a diacritic mark
+    private static final String PANGRAM = "P\u0159\u00edli\u0161 \u017dLU\u0164OU\u010cK\u00dd k\u016f\u0148"
+            + " \u00fap\u011bl \u010f\u00e1belsk\u00e9 \u00f3dy.";
+
+    @Test
+    public void foldsDiacriticsAndCase() {
+        assertEquals(Arrays.asList("prilis", "zlutoucky", "kun", "upel", "dabelske", "ody"),
+                tokenize(new Tokenizer(null), PANGRAM));
+        assertEquals('e', Tokenizer.normalize('\u011a'));
+        assertEquals('z', Tokenizer.normalize('\u017e'));
+    }
+
+    @Test
+    public void dropsStopWords() {
+        // stop words are folded like the tokens
+        Set<String> stopWords = Tokenizer.loadStopWords(new ByteArrayInputStream(
+                "a\nJe\n\u017ee\np\u0159ed\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(new HashSet<String>(Arrays.asList("a", "je", "ze", "pred")), stopWords);
+
+        Tokenizer tokenizer = new Tokenizer(stopWords);
+        List<String> tokens = new ArrayList<String>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        char[] text = "Je jasn\u00e9, \u017ee P\u0158ED domem a za domem".toCharArray();
+        tokenizer.tokenize(text, 0, text.length, tokens, counts);
+
+        assertEquals(Arrays.asList("jasne", "domem", "za", "domem"), tokens);
+        assertEquals(3, counts.size());
+        assertEquals(2, counts.get("domem").intValue());
+    }
+
+    @Test
+    public void splitsOnCharactersOtherThanLettersAndDigits() {
+        assertEquals(Arrays.asList("covid", "19", "ma", "2", "vlny", "x1"),
+                tokenize(new Tokenizer(null), "  covid-19 m\u00e1 2 vlny...x1"));
+    }
+
+    @Test
+    public void tokenizesOnlyGivenRange() {
+        char[] text = "prvni druhe treti".toCharArray();
+        List<String> tokens = new ArrayList<String>();
+        new Tokenizer(null).tokenize(text, 6, 11, tokens, new HashMap<String, Integer>());
+        assertEquals(Arrays.asList("druhe"), tokens);
+    }
+
+    @Test
+    public void keepsTokensLongerThanTheBuffer() {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            word.append((char) ('a' + i % 26));
+        }
+        assertEquals(Arrays.asList("x", word.toString(), "y"),
+                tokenize(new Tokenizer(null), "x " + word.toString().toUpperCase() + " y"));
+    }
+
+    private static List<String> tokenize(Tokenizer tokenizer, String text) {
+        List<String> tokens = new ArrayList<String>();
+        char[] chars = text.toCharArray();
+        tokenizer.tokenize(chars, 0, chars.length, tokens, new HashMap<String, Integer>());
+        return tokens;
+    }
+}
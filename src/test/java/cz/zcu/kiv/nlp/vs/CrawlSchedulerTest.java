@@ -0,0 +1,183 @@
+package cz.zcu.kiv.nlp.vs;
+
+import cz.zcu.kiv.nlp.Storage;
+import cz.zcu.kiv.nlp.ir.AbstractHTMLDownloader;
+import cz.zcu.kiv.nlp.ir.ExtractionPlan;
+import cz.zcu.kiv.nlp.ir.FailureTracker;
+import cz.zcu.kiv.nlp.utils.Links;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs {@link CrawlScheduler} with a downloader which only records the requests.
+ */
+public class CrawlSchedulerTest {
+
+    private static final int POLITENESS_MILLIS = 50;
+
+    /**
+     * Requests of all downloaders in the order they were sent.
+     */
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+    /**
+     * Links found on the seeds.
+     */
+    private final Map<String, List<String>> seedLinks = new HashMap<String, List<String>>();
+
+    @Test
+    @Timeout(10)
+    public void servesHostsInTurn() throws IOException {
+        File root = Files.createTempDirectory("crawl-scheduler").toFile();
+        try {
+            List<Crawler> crawlers = Arrays.asList(
+                    crawler(root, "a", "/1", "/2", "/3"),
+                    crawler(root, "b", "/1", "/2", "/3"));
+            scheduler(1).run(crawlers);
+
+            assertEquals(8, requests.size());
+            for (int i = 1; i < requests.size(); i++) {
+                assertTrue(!requests.get(i).host().equals(requests.get(i - 1).host()),
+                        "Host " + requests.get(i).host() + " was served twice in a row");
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    public void keepsPolitenessIntervalOfHost() throws IOException {
+        File root = Files.createTempDirectory("crawl-scheduler").toFile();
+        try {
+            scheduler(3).run(Arrays.asList(crawler(root, "a", "/1", "/2", "/3")));
+
+            assertEquals(4, requests.size());
+            for (int i = 1; i < requests.size(); i++) {
+                long gap = requests.get(i).startNanos - requests.get(i - 1).endNanos;
+                assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(POLITENESS_MILLIS),
+                        "Requests were sent " + TimeUnit.NANOSECONDS.toMillis(gap) + " ms apart");
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    public void finishesUrlsSubmittedByTasks() throws IOException {
+        File root = Files.createTempDirectory("crawl-scheduler").toFile();
+        try {
+            Crawler first = crawler(root, "a", Arrays.asList("http://a.test/", "http://a.test/news"),
+                    "/1", "/2", "/3");
+            seedLinks.put("http://a.test/news", Arrays.asList("/3", "/4"));
+            Crawler second = crawler(root, "b", "/1", "/2");
+            scheduler(2).run(Arrays.asList(first, second));
+
+            assertTrue(first.isFinished());
+            assertEquals(4, first.getTotalCount());
+            assertEquals(4, first.getProcessedCount());
+            assertTrue(second.isFinished());
+            assertEquals(2, second.getProcessedCount());
+
+            List<String> urls = new ArrayList<String>();
+            for (Request request : requests) {
+                urls.add(request.url);
+            }
+            assertEquals(9, urls.size());
+            assertEquals(9, new HashSet<String>(urls).size());
+        } finally {
+            delete(root);
+        }
+    }
+
+    private CrawlScheduler scheduler(int workers) {
+        return new CrawlScheduler(tracker -> new RecordingDownloader(tracker), workers, new FailureTracker());
+    }
+
+    private Crawler crawler(File root, String name, String... links) {
+        return crawler(root, name, Arrays.asList("http://" + name + ".test/"), links);
+    }
+
+    private Crawler crawler(File root, String name, List<String> seeds, String... links) {
+        seedLinks.put(seeds.get(0), Arrays.asList(links));
+        String storagePath = new File(root, name).getPath();
+        Map<String, String> xpathMap = new HashMap<String, String>();
+        xpathMap.put("title", "//h1/text()");
+        CrawlJob job = new CrawlJob(name, "http://" + name + ".test", seeds, Arrays.asList("//a/@href"),
+                xpathMap, ExtractionPlan.UNLIMITED_MATCHES, ExtractionPlan.DEFAULT_MAX_BODY_CHARS, storagePath,
+                "/" + CrawlJob.DEFAULT_URLS_STORAGE_PATH, POLITENESS_MILLIS, Collections.<String>emptyList(), null);
+        return new Crawler(job, new Storage(storagePath));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static final class Request {
+        final String url;
+        final long startNanos;
+        final long endNanos;
+
+        Request(String url, long startNanos, long endNanos) {
+            this.url = url;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+
+        String host() {
+            return Links.hostOf(url);
+        }
+    }
+
+    /**
+     * Returns links of the seeds and the url itself for the other pages.
+     */
+    private final class RecordingDownloader extends AbstractHTMLDownloader {
+
+        RecordingDownloader(FailureTracker failureTracker) {
+            super(failureTracker);
+        }
+
+        @Override
+        public Map<String, List<String>> processUrl(String url, ExtractionPlan plan) {
+            long start = System.nanoTime();
+            Map<String, List<String>> results = new HashMap<String, List<String>>();
+            List<String> links = seedLinks.get(url);
+            for (String key : plan.getKeys()) {
+                results.put(key, links != null ? links : Arrays.asList(url));
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            requests.add(new Request(url, start, System.nanoTime()));
+            return results;
+        }
+
+        @Override
+        public void quit() {
+        }
+    }
+}